@@ -0,0 +1,241 @@
+package cs224n.assignments;
+
+import cs224n.langmodel.HistoryState;
+import cs224n.langmodel.LanguageModel;
+import cs224n.util.Parallel;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unscrambles a bag of words into the ordering a language model scores
+ * highest, by beam search rather than by ranking a given n-best list.
+ * Orderings are built left to right, one word at a time, and each step
+ * keeps the beamWidth best partial orderings.  A partial ordering is
+ * scored incrementally, through the model's HistoryState after it, and
+ * partial orderings with equal states and the same words left are
+ * recombined, keeping the best of them.  The transitions between
+ * states are memoized per bag, and a large beam is expanded on the
+ * threads of cs224n.util.Parallel.
+ *
+ * The search is not exhaustive, so the ordering found may score below
+ * the best one; the wider the beam, the less likely that is.
+ */
+public class JumbleDecoder {
+
+  public static final int DEFAULT_BEAM_WIDTH = 100;
+
+  static final String STOP = "</S>";
+
+  // beams smaller than this are expanded in the calling thread
+  private static final int MIN_PARALLEL_BEAM = 32;
+
+  private LanguageModel model;
+  private int beamWidth;
+
+  // -----------------------------------------------------------------------
+
+  public JumbleDecoder(LanguageModel model, int beamWidth) {
+    if (beamWidth < 1)
+      throw new IllegalArgumentException("Beam width must be positive: " + beamWidth);
+    this.model = model;
+    this.beamWidth = beamWidth;
+  }
+
+  public JumbleDecoder(LanguageModel model) {
+    this(model, DEFAULT_BEAM_WIDTH);
+  }
+
+  public int getBeamWidth() {
+    return beamWidth;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * What a partial ordering's future depends on: the model's state after
+   * it and the count of each word still to be placed.
+   */
+  private static class State {
+    HistoryState history;
+    int[] remaining;
+    int hashCode;
+
+    State(HistoryState history, int[] remaining) {
+      this.history = history;
+      this.remaining = remaining;
+      hashCode = 31 * history.hashCode() + Arrays.hashCode(remaining);
+    }
+
+    public int hashCode() {
+      return hashCode;
+    }
+
+    public boolean equals(Object o) {
+      State state = (State) o;
+      return hashCode == state.hashCode && history.equals(state.history) &&
+        Arrays.equals(remaining, state.remaining);
+    }
+  }
+
+  private static class Hypothesis {
+    Hypothesis previous;
+    int word;            // the last word placed, -1 for none
+    State state;
+    double logProb;
+
+    Hypothesis(Hypothesis previous, int word, State state, double logProb) {
+      this.previous = previous;
+      this.word = word;
+      this.state = state;
+      this.logProb = logProb;
+    }
+  }
+
+  private static final Comparator<Hypothesis> BEST_FIRST = new Comparator<Hypothesis>() {
+    public int compare(Hypothesis h1, Hypothesis h2) {
+      return Double.compare(h2.logProb, h1.logProb);
+    }
+  };
+
+  /**
+   * The search for one bag of words, which are numbered in sorted order
+   * so that the result does not depend on the order they were given in.
+   */
+  private class Search {
+
+    List<String> words = new ArrayList<String>();
+    int[] counts;
+    int stop;                   // the number standing for the stop token
+    // the state after each word (or the stop token), by state
+    ConcurrentHashMap<HistoryState, HistoryState[]> transitions =
+      new ConcurrentHashMap<HistoryState, HistoryState[]>();
+
+    Search(List<String> bag) {
+      TreeMap<String, Integer> wordCounts = new TreeMap<String, Integer>();
+      for (String word : bag) {
+        Integer count = wordCounts.get(word);
+        wordCounts.put(word, count == null ? 1 : count + 1);
+      }
+      counts = new int[wordCounts.size()];
+      for (Map.Entry<String, Integer> entry : wordCounts.entrySet()) {
+        counts[words.size()] = entry.getValue();
+        words.add(entry.getKey());
+      }
+      stop = words.size();
+    }
+
+    /**
+     * Returns the model's state after a word (or the stop token) in the
+     * given state.  Threads racing to fill in a transition compute equal
+     * states, so either may win.
+     */
+    HistoryState score(HistoryState history, int word) {
+      HistoryState[] next = transitions.get(history);
+      if (next == null) {
+        next = new HistoryState[stop + 1];
+        HistoryState[] other = transitions.putIfAbsent(history, next);
+        if (other != null)
+          next = other;
+      }
+      if (next[word] == null)
+        next[word] = model.score(history, word == stop ? STOP : words.get(word));
+      return next[word];
+    }
+
+    /**
+     * Returns the extensions of a hypothesis by each distinct word left,
+     * or by the stop token once no words are left.
+     */
+    List<Hypothesis> expand(Hypothesis hypothesis) {
+      State state = hypothesis.state;
+      List<Hypothesis> extensions = new ArrayList<Hypothesis>();
+      boolean done = true;
+      for (int word = 0; word < stop; word++) {
+        if (state.remaining[word] == 0)
+          continue;
+        done = false;
+        HistoryState history = score(state.history, word);
+        int[] remaining = state.remaining.clone();
+        remaining[word]--;
+        extensions.add(new Hypothesis(hypothesis, word, new State(history, remaining),
+                                      hypothesis.logProb + history.getLogProbability()));
+      }
+      if (done)
+        extensions.add(new Hypothesis(hypothesis, -1, state,
+                                      hypothesis.logProb + score(state.history, stop).getLogProbability()));
+      return extensions;
+    }
+
+    /**
+     * Expands every hypothesis of the beam, recombines extensions with
+     * the same state, and returns the best beamWidth of them, best
+     * first.  Ties are broken by the order of generation, so the
+     * result does not depend on the number of threads.
+     */
+    List<Hypothesis> step(final List<Hypothesis> beam) {
+      final List<List<Hypothesis>> extensions = new ArrayList<List<Hypothesis>>(beam.size());
+      for (int i = 0; i < beam.size(); i++) {
+        extensions.add(null);
+      }
+      Parallel.IndexTask task = new Parallel.IndexTask() {
+        public void run(int i) {
+          extensions.set(i, expand(beam.get(i)));
+        }
+      };
+      if (beam.size() >= MIN_PARALLEL_BEAM) {
+        Parallel.forEach(beam.size(), task);
+      } else {
+        for (int i = 0; i < beam.size(); i++) {
+          task.run(i);
+        }
+      }
+      Map<State, Hypothesis> best = new LinkedHashMap<State, Hypothesis>();
+      for (List<Hypothesis> hypotheses : extensions) {
+        for (Hypothesis hypothesis : hypotheses) {
+          Hypothesis other = best.get(hypothesis.state);
+          if (other == null || hypothesis.logProb > other.logProb)
+            best.put(hypothesis.state, hypothesis);
+        }
+      }
+      List<Hypothesis> nextBeam = new ArrayList<Hypothesis>(best.values());
+      Collections.sort(nextBeam, BEST_FIRST);
+      return (nextBeam.size() > beamWidth ? nextBeam.subList(0, beamWidth) : nextBeam);
+    }
+
+    Hypothesis run() {
+      List<Hypothesis> beam = new ArrayList<Hypothesis>();
+      beam.add(new Hypothesis(null, -1, new State(model.beginSentence(), counts.clone()), 0.0));
+      int length = 0;
+      for (int count : counts) {
+        length += count;
+      }
+      // one step per word, and a last one for the stop token
+      for (int i = 0; i <= length; i++) {
+        beam = step(beam);
+      }
+      return beam.get(0);
+    }
+
+    List<String> getWords(Hypothesis hypothesis) {
+      LinkedList<String> sentence = new LinkedList<String>();
+      for (Hypothesis h = hypothesis; h != null; h = h.previous) {
+        if (h.word >= 0)
+          sentence.addFirst(words.get(h.word));
+      }
+      return new ArrayList<String>(sentence);
+    }
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the ordering of the given words that scores highest among
+   * those the beam search finds.
+   */
+  public List<String> decode(List<String> bag) {
+    Search search = new Search(bag);
+    return search.getWords(search.run());
+  }
+
+}
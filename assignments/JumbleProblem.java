@@ -1,14 +1,23 @@
 package cs224n.assignments;
 
+import cs224n.util.Parallel;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /**
  * Represents a Jumble text problem.  Each problem has a correct sentence, 
  * and a list of jumbled sentences. <p/>
  *
  * The main purpose of this class is the enclosed Reader class, which
- * provides a front end to a directory full of Jumble data. <p/>
+ * provides a front end to a directory full of Jumble data.  Problems
+ * read through a Stream also hold their sentences as arrays of word ids
+ * from a Vocabulary shared by the whole directory, and their sentences
+ * as lists of words are views of those ids. <p/>
  *
  * @author Nate Chambers (adapted from HUBProblem by Dan Klein, Bill MacCartney)
  */
@@ -18,6 +27,8 @@ public class JumbleProblem {
 
   private List<String> correctSentence;
   private List<List<String>> nBestSentences;
+  private int[] correctIds;       // null unless read through a Stream
+  private int[][] nBestIds;
 
   /**
    * Constructor
@@ -28,6 +39,20 @@ public class JumbleProblem {
     this.nBestSentences = nBestSentences;
   }
 
+  /**
+   * Constructs a problem from sentences of word ids in the given
+   * vocabulary.
+   */
+  public JumbleProblem(Vocabulary vocabulary, int[] correctIds, int[][] nBestIds) {
+    this.correctIds = correctIds;
+    this.nBestIds = nBestIds;
+    this.correctSentence = vocabulary.getWords(correctIds);
+    this.nBestSentences = new ArrayList<List<String>>(nBestIds.length);
+    for (int[] ids : nBestIds) {
+      nBestSentences.add(vocabulary.getWords(ids));
+    }
+  }
+
   /**
    * @return The original correct ordering of the sentence.
    */
@@ -42,50 +67,185 @@ public class JumbleProblem {
     return nBestSentences;
   }
 
+  /**
+   * @return The word ids of the correct sentence, or null if the problem
+   * was not built from ids.
+   */
+  public int[] getCorrectIds() {
+    return correctIds;
+  }
+
+  /**
+   * @return The word ids of each jumbled sentence, or null if the problem
+   * was not built from ids.
+   */
+  public int[][] getNBestIds() {
+    return nBestIds;
+  }
+
   // =======================================================================
 
-  static class Reader {
+  /**
+   * A two-way map between words and consecutive integer ids, which may
+   * be shared by threads assigning ids at once.  Ids are looked up
+   * without locking; only new words take a lock.
+   */
+  public static class Vocabulary {
 
-    public static List<JumbleProblem> readJumbleProblems(String path) 
-      throws IOException {
-      List<JumbleProblem> jumbleProblems = new ArrayList<JumbleProblem>();
-      BufferedReader correctSentenceReader = open(path + "/gold");
+    private final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] words = new String[1024];
+    private int size;
 
-      // Read in all of the correct sentences for each jumble problem
-      Vector<List<String>> correctSentences = readCorrectSentences(correctSentenceReader);
+    /**
+     * Returns the id of the word, assigning the next id to a new word.
+     */
+    public int getId(String word) {
+      Integer id = ids.get(word);
+      if (id != null)
+        return id;
+      synchronized (this) {
+        id = ids.get(word);
+        if (id != null)
+          return id;
+        if (size == words.length)
+          words = Arrays.copyOf(words, 2 * size);
+        // the word is stored before its id is published
+        words[size] = word;
+        ids.put(word, size);
+        return size++;
+      }
+    }
 
-      // Loop over the files and build a JumbleProblem for each
-      for (int i = 0; i < correctSentences.size(); i++ ) {
-	String file = "test" + i;
-        BufferedReader jumbleReader = open(path + File.separator + file);
-        List<String> correctSentence = correctSentences.elementAt(i);
-        JumbleProblem jumbleProblem = 
-	  buildJumbleProblem(correctSentence, jumbleReader);
+    /**
+     * Returns the word with an id returned by getId().
+     */
+    public String getWord(int id) {
+      return words[id];
+    }
 
-        if (jumbleProblem == null)
-          System.err.println("Failed to read problem " + file);
-	else jumbleProblems.add(jumbleProblem);
+    public synchronized int size() {
+      return size;
+    }
 
-	jumbleReader.close();
-      }
-      correctSentenceReader.close();
-      return jumbleProblems;
+    /**
+     * Returns a read-only view of the sentence with the given word ids.
+     */
+    public List<String> getWords(final int[] sentence) {
+      return new AbstractList<String>() {
+        public String get(int index) {
+          return getWord(sentence[index]);
+        }
+        public int size() {
+          return sentence.length;
+        }
+      };
     }
+  }
 
-    private static JumbleProblem buildJumbleProblem(List<String> correct,
-						    BufferedReader jumbleReader) throws IOException {
-      List<List<String>> guessList = readJumbles(jumbleReader);
+  // =======================================================================
 
-      if (guessList == null || guessList.size() == 0 ) {
-	System.err.println("WARNING: failed to construct Jumble problem: guessList is empty");
-        return null;
-      }
-      if (correct == null) {
-	System.err.println("WARNING: failed to construct Jumble problem: correctGuess is null");
-        return null;
+  /**
+   * The Jumble problems of a directory, read lazily.  The correct
+   * sentences are read when the stream is opened; each iterator then
+   * reads the test files in order, a few files ahead of the caller on
+   * the threads of cs224n.util.Parallel, so that problems may be
+   * evaluated as they are read without all of them being held at once.
+   * Problems with an empty test file are reported and skipped.
+   */
+  public static class Stream implements Iterable<JumbleProblem> {
+
+    private String path;
+    private Vocabulary vocabulary;
+    private int[][] correctSentences;
+
+    Stream(String path) throws IOException {
+      this.path = path;
+      vocabulary = new Vocabulary();
+      correctSentences = Reader.readSentences(path + File.separator + "gold", vocabulary);
+    }
+
+    /**
+     * Returns the number of problems listed, including any that turn out
+     * to be unreadable.
+     */
+    public int size() {
+      return correctSentences.length;
+    }
+
+    public Vocabulary getVocabulary() {
+      return vocabulary;
+    }
+
+    public Iterator<JumbleProblem> iterator() {
+      final Iterator<int[][]> nBestLists = Parallel.mapAhead(correctSentences.length,
+                                                             new Parallel.IndexFunction<int[][]>() {
+        public int[][] apply(int i) {
+          try {
+            return Reader.readSentences(path + File.separator + "test" + i, vocabulary);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      return new Iterator<JumbleProblem>() {
+        int index;
+        JumbleProblem next;
+
+        private void advance() {
+          while (next == null && nBestLists.hasNext()) {
+            int[][] nBestIds = nBestLists.next();
+            if (nBestIds.length == 0) {
+              System.err.println("WARNING: failed to construct Jumble problem: guessList is empty");
+              System.err.println("Failed to read problem test" + index);
+            } else {
+              next = new JumbleProblem(vocabulary, correctSentences[index], nBestIds);
+            }
+            index++;
+          }
+        }
+
+        public boolean hasNext() {
+          advance();
+          return next != null;
+        }
+
+        public JumbleProblem next() {
+          advance();
+          if (next == null)
+            throw new NoSuchElementException();
+          JumbleProblem problem = next;
+          next = null;
+          return problem;
+        }
+
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  // =======================================================================
+
+  static class Reader {
+
+    /**
+     * Reads every Jumble problem of a directory into a list.
+     */
+    public static List<JumbleProblem> readJumbleProblems(String path) 
+      throws IOException {
+      List<JumbleProblem> jumbleProblems = new ArrayList<JumbleProblem>();
+      for (JumbleProblem jumbleProblem : streamJumbleProblems(path)) {
+        jumbleProblems.add(jumbleProblem);
       }
+      return jumbleProblems;
+    }
 
-      return new JumbleProblem(correct, guessList);
+    /**
+     * Opens a directory of Jumble problems for reading one at a time.
+     */
+    public static Stream streamJumbleProblems(String path) throws IOException {
+      return new Stream(path);
     }
 
     private static boolean equalsIgnoreSpaces(List<String> sentence1, List<String> sentence2) {
@@ -100,21 +260,6 @@ public class JumbleProblem {
       return sb1.toString().equalsIgnoreCase(sb2.toString());
     }
 
-    private static List<List<String>> readJumbles(BufferedReader jumbleReader) throws IOException {
-      List<List<String>> jumbleList = new ArrayList<List<String>>();
-      while (jumbleReader.ready()) {
-        String line = jumbleReader.readLine();
-        String[] words = line.split("\\s+");
-        List<String> sentence = new ArrayList<String>();
-        for (int i = 0; i < words.length; i++) {
-          String word = words[i];
-          sentence.add(word.toLowerCase());
-        }
-        jumbleList.add(sentence);
-      }
-      return jumbleList;
-    }
-
     // Returns a list of filenames (e.g. ".../test3")
     private static List<String> getTestFiles(String path) {
       List<String> fileList = new ArrayList<String>();
@@ -130,26 +275,62 @@ public class JumbleProblem {
     }
 
     /**
-     * Reads one sentence per line, returns them in a Vector
+     * Reads one sentence per line as word ids.  The file is read whole
+     * and decoded in the platform charset, as FileReader would, and each
+     * line is split and lowercased exactly as by
+     * line.split("\\s+") and String.toLowerCase(), but without regular
+     * expressions.
      */
-    private static Vector<List<String>> readCorrectSentences(BufferedReader reader)
-      throws IOException {
-      Vector<List<String>> correctSentences = new Vector();
-      while (reader.ready()) {
-        String line = reader.readLine();
-        String[] words = line.split("\\s+");
-        List<String> sentence = new ArrayList<String>();
-        for (int i = 0; i < words.length; i++) {
-          String word = words[i];
-          sentence.add(word.toLowerCase());
-        }
-        correctSentences.add(sentence);
+    static int[][] readSentences(String fileName, Vocabulary vocabulary) throws IOException {
+      String text = new String(Files.readAllBytes(Paths.get(fileName)), Charset.defaultCharset());
+      List<int[]> sentences = new ArrayList<int[]>();
+      int[][] ids = new int[][] { new int[32] };
+      int pos = 0;
+      while (pos < text.length()) {
+        int end = pos;
+        while (end < text.length() && text.charAt(end) != '\n' && text.charAt(end) != '\r') end++;
+        int length = tokenize(text, pos, end, vocabulary, ids);
+        sentences.add(Arrays.copyOf(ids[0], length));
+        if (end + 1 < text.length() && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') end++;
+        pos = end + 1;
       }
-      return correctSentences;
+      return sentences.toArray(new int[sentences.size()][]);
     }
 
-    private static BufferedReader open(String fileName) throws FileNotFoundException {
-      return new BufferedReader(new FileReader(fileName));
+    /**
+     * Returns true for the characters matched by the regular expression
+     * \s (other than line terminators, which never occur within a line).
+     */
+    private static boolean isSpace(char c) {
+      return c == ' ' || c == '\t' || c == 0x0B || c == '\f';
+    }
+
+    /**
+     * Splits the line text[start, end) into word ids as split("\\s+")
+     * would: an empty line yields one empty word, leading whitespace an
+     * empty first word, and a line of nothing but whitespace no words.
+     * Ids are written to ids[0] (which is grown as needed) and the number
+     * of words is returned.
+     */
+    private static int tokenize(String text, int start, int end, Vocabulary vocabulary, int[][] ids) {
+      if (start == end) {
+        ids[0][0] = vocabulary.getId("");
+        return 1;
+      }
+      int count = 0;
+      int pos = start;
+      while (true) {
+        while (pos < end && isSpace(text.charAt(pos))) pos++;
+        if (pos == end) break;
+        int tokenStart = pos;
+        while (pos < end && !isSpace(text.charAt(pos))) pos++;
+        if (count + 2 > ids[0].length)
+          ids[0] = Arrays.copyOf(ids[0], 2 * ids[0].length);
+        if (count == 0 && tokenStart > start)
+          ids[0][count++] = vocabulary.getId("");
+        ids[0][count++] = vocabulary.getId(text.substring(tokenStart, pos).toLowerCase());
+      }
+      return count;
     }
   }
 }
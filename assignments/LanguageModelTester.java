@@ -15,6 +15,54 @@ import java.text.DecimalFormat;
  */
 public class LanguageModelTester {
 
+  /**
+   * The log (base 2) probabilities of a run of sentences, in corpus order,
+   * and the total number of words in them.
+   */
+  static class SentenceScores {
+    double[] logProbabilities = new double[256];
+    int size;
+    double numSymbols;
+
+    void add(double logProbability, int length) {
+      if (size == logProbabilities.length)
+        logProbabilities = Arrays.copyOf(logProbabilities, 2 * size);
+      logProbabilities[size++] = logProbability;
+      numSymbols += length;
+    }
+
+    void addAll(SentenceScores other) {
+      if (size + other.size > logProbabilities.length)
+        logProbabilities = Arrays.copyOf(logProbabilities,
+                                         Math.max(2 * size, size + other.size));
+      System.arraycopy(other.logProbabilities, 0, logProbabilities, size, other.size);
+      size += other.size;
+      numSymbols += other.numSymbols;
+    }
+  }
+
+  /**
+   * Returns the sum of the first n values, using Neumaier's compensated
+   * summation so that rounding error does not grow with n.  (An infinite
+   * sum, from a sentence of zero probability, is returned as is.)
+   */
+  static double compensatedSum(double[] values, int n) {
+    double sum = 0.0;
+    double compensation = 0.0;
+    for (int i = 0; i < n; i++) {
+      double value = values[i];
+      double t = sum + value;
+      if (Math.abs(sum) >= Math.abs(value))
+        compensation += (sum - t) + value;
+      else
+        compensation += (value - t) + sum;
+      sum = t;
+    }
+    if (Double.isInfinite(sum))
+      return sum;
+    return sum + compensation;
+  }
+
   /**
    * Returns the perplexity of the data in the specified sentence
    * collection according to the specified language model.  The perplexity
@@ -22,66 +70,143 @@ public class LanguageModelTester {
    * defined as the negative of the average (over the dataset) of the log
    * (base 2) of the probability, according to the model, of each datum.
    * Lower perplexity indicates a better fit.
+   *
+   * Sentences are scored on the threads of cs224n.util.Parallel, but their
+   * log probabilities are summed in corpus order, so the result is the
+   * same for any number of threads.
    */
-  static double computePerplexity(LanguageModel languageModel, 
+  static double computePerplexity(final LanguageModel languageModel, 
                                   Collection<List<String>> sentences) {
-    double logProbability = 0.0;
-    double numSymbols = 0.0;
-    for (List<String> sentence : sentences) {
-      logProbability += 
-        Math.log(languageModel.getSentenceProbability(sentence)) / 
-        Math.log(2.0);
-      numSymbols += sentence.size();
-      //      System.out.println("logp=" + logProbability + " size=" + numSymbols);
-    }
-    double avgLogProbability = logProbability / numSymbols;
-    //    System.out.println("avglogp=" + avgLogProbability);
+    SentenceScores scores = Parallel.accumulate(sentences,
+        new Parallel.Accumulator<List<String>, SentenceScores>() {
+      public SentenceScores newResult() {
+        return new SentenceScores();
+      }
+      public void accumulate(SentenceScores scores, List<String> sentence) {
+        scores.add(languageModel.getSentenceLogProbability(sentence) / Math.log(2.0),
+                   sentence.size());
+      }
+      public void merge(SentenceScores scores, SentenceScores chunkScores) {
+        scores.addAll(chunkScores);
+      }
+    });
+    double logProbability = compensatedSum(scores.logProbabilities, scores.size);
+    double avgLogProbability = logProbability / scores.numSymbols;
     double perplexity = Math.pow(0.5, avgLogProbability);
-    //    System.out.println("perplexity=" + perplexity);
     return perplexity;
   }
 
   /**
-   * Computes the word error rate obtained using the specified language
-   * model to help predict correct answers to the specified list of Jumble
-   * Enron problems.  Each problem includes a correct
-   * answer and a set of candidate answers.  Here we compute the score from the language model, select the candidate answer with the highest probability, and report the edit
-   * distance (roughly, the number of words it got wrong -- see above)
-   * between the selected answer and the correct answer.  (If multiple
-   * candidate answers tie for the best score, we report their average edit
-   * distance from the correct answer.)
+   * The result of running a language model over a stream of Jumble
+   * problems: for each problem, the model's log probability of each
+   * candidate answer and the candidate's edit distance from the correct
+   * answer, along with the correct answer and the first of the best
+   * scoring candidates.  Everything reported about the problems is
+   * derived from this table, so each candidate is scored and compared
+   * exactly once, and the n-best lists themselves need not be kept.
+   */
+  static class JumbleResults {
+    List<List<String>> correctSentences = new ArrayList<List<String>>();
+    List<List<String>> bestGuesses = new ArrayList<List<String>>();
+    List<double[]> scores = new ArrayList<double[]>();      // [problem][candidate]
+    List<double[]> distances = new ArrayList<double[]>();   // [problem][candidate]
+
+    int size() {
+      return scores.size();
+    }
+  }
+
+  static final int JUMBLE_BLOCK_SIZE = 256;
+
+  /**
+   * Scores and compares the candidates of every problem, reading the
+   * problems in blocks so that only a block (plus whatever the reader
+   * has read ahead) is held at once.  The problems of a block are spread
+   * over the threads of cs224n.util.Parallel one at a time, as threads
+   * become free, since their n-best lists differ in size; each problem's
+   * candidates are scored as one batch.
+   */
+  static JumbleResults evaluateJumbleProblems(final LanguageModel languageModel,
+                                              Iterable<JumbleProblem> jumbleProblems) {
+    JumbleResults results = new JumbleResults();
+    final EditDistance editDistance = new EditDistance();
+    final List<JumbleProblem> block = new ArrayList<JumbleProblem>(JUMBLE_BLOCK_SIZE);
+    Iterator<JumbleProblem> iterator = jumbleProblems.iterator();
+    while (iterator.hasNext()) {
+      block.clear();
+      while (iterator.hasNext() && block.size() < JUMBLE_BLOCK_SIZE) {
+        block.add(iterator.next());
+      }
+      final double[][] scores = new double[block.size()][];
+      final double[][] distances = new double[block.size()][];
+      Parallel.forEachDynamic(block.size(), new Parallel.IndexTask() {
+        public void run(int p) {
+          JumbleProblem problem = block.get(p);
+          List<List<String>> guesses = problem.getNBestSentences();
+          scores[p] = languageModel.getSentenceLogProbabilities(guesses);
+          distances[p] = new double[guesses.size()];
+          for (int g = 0; g < guesses.size(); g++) {
+            if (problem.getCorrectIds() != null)
+              distances[p][g] = editDistance.getDistance(problem.getCorrectIds(), problem.getNBestIds()[g]);
+            else
+              distances[p][g] = editDistance.getDistance(problem.getCorrectSentence(), guesses.get(g));
+          }
+        }
+      });
+      for (int p = 0; p < block.size(); p++) {
+        int best = 0;
+        for (int g = 1; g < scores[p].length; g++) {
+          if (scores[p][g] > scores[p][best])
+            best = g;
+        }
+        results.correctSentences.add(block.get(p).getCorrectSentence());
+        results.bestGuesses.add(block.get(p).getNBestSentences().get(best));
+        results.scores.add(scores[p]);
+        results.distances.add(distances[p]);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Computes the word error rate obtained using the language model behind
+   * the results to help predict correct answers to the Jumble Enron
+   * problems.  Each problem includes a correct answer and a set of
+   * candidate answers.  Here we select the candidate answer with the
+   * highest score from the language model, and report the edit distance
+   * (roughly, the number of words it got wrong -- see above) between the
+   * selected answer and the correct answer.  (If multiple candidate
+   * answers tie for the best score, we report their average edit distance
+   * from the correct answer.)
    * This also computers the "% correct" score which is the number of sentences
    * you choose exactly correct.
    * @param showGuesses True if you want to print the highest scoring sentences
    * @return A pair of scores: (1) WER and (2) % correct
    */
-  static Pair<Double,Double> computeWordErrorRate(LanguageModel languageModel, 
-						  List<JumbleProblem> jumbleProblems,
+  static Pair<Double,Double> computeWordErrorRate(JumbleResults results,
 						  boolean showGuesses) {
-    double totalDistance = 0.0;
-    double totalWords = 0.0;
     double totalWER = 0.0;
     int absoluteCorrect = 0;
-    EditDistance editDistance = new EditDistance();
+    int numProblems = results.size();
 
     if( showGuesses ) System.out.println("***Rebuilt Enron Emails***");
     // Loop over each jumbled sentence.
-    for (JumbleProblem jProblem : jumbleProblems) {
-      List<String> correctSentence = jProblem.getCorrectSentence();
-      List<String> bestGuess = null;
+    for (int p = 0; p < numProblems; p++) {
+      List<String> correctSentence = results.correctSentences.get(p);
+      List<String> bestGuess = results.bestGuesses.get(p);
+      double[] scores = results.scores.get(p);
       double bestScore = Double.NEGATIVE_INFINITY;
       double numWithBestScores = 0.0;
       double distanceForBestScores = 0.0;
-      for (List<String> guess : jProblem.getNBestSentences()) {
-        double score = languageModel.getSentenceProbability(guess);
-        double distance = editDistance.getDistance(correctSentence, guess);
+      for (int g = 0; g < scores.length; g++) {
+        double score = scores[g];
+        double distance = results.distances.get(p)[g];
         if (score == bestScore) {
           numWithBestScores += 1.0;
           distanceForBestScores += distance;
         }
-        if (score > bestScore || bestGuess == null) {
+        if (score > bestScore || g == 0) {
           bestScore = score;
-          bestGuess = guess;
           distanceForBestScores = distance;
           numWithBestScores = 1.0;
         }
@@ -95,16 +220,13 @@ public class LanguageModelTester {
       if( distanceForBestScores == 0 ) {
 	absoluteCorrect++;
       }
-      totalDistance += distanceForBestScores / numWithBestScores;
-      totalWords += correctSentence.size();
       totalWER += distanceForBestScores / (numWithBestScores * correctSentence.size());
     } // end jumbleproblem loop
 
     if( showGuesses ) System.out.println("******");
 
-    //    return totalDistance / totalWords;
-    return new Pair<Double,Double>(totalWER / (double)jumbleProblems.size(), 
-				   (double)absoluteCorrect / (double)jumbleProblems.size());
+    return new Pair<Double,Double>(totalWER / (double)numProblems, 
+				   (double)absoluteCorrect / (double)numProblems);
   }
 
   /**
@@ -114,20 +236,17 @@ public class LanguageModelTester {
    * edit distance between the selected answer and the correct answer over
    * all problems is returned.
    */
-  static double computeWordErrorRateUpperBound(List<JumbleProblem> problems) {
+  static double computeWordErrorRateUpperBound(JumbleResults results) {
     double totalDistance = 0.0;
     double totalWords = 0.0;
-    EditDistance editDistance = new EditDistance();
-    for (JumbleProblem problem : problems) {
-      List<String> correctSentence = problem.getCorrectSentence();
+    for (int p = 0; p < results.size(); p++) {
       double worstDistance = Double.NEGATIVE_INFINITY;
-      for (List<String> guess : problem.getNBestSentences()) {
-        double distance = editDistance.getDistance(correctSentence, guess);
+      for (double distance : results.distances.get(p)) {
         if (distance > worstDistance)
           worstDistance = distance;
       }
       totalDistance += worstDistance;
-      totalWords += correctSentence.size();
+      totalWords += results.correctSentences.get(p).size();
     }
     return totalDistance / totalWords;
   }
@@ -138,36 +257,84 @@ public class LanguageModelTester {
    * selected.  The average edit distance between the selected answer and
    * the correct answer over all problems is returned.
    */
-  static double computeWordErrorRateRandomChoice(List<JumbleProblem> problems) {
+  static double computeWordErrorRateRandomChoice(JumbleResults results) {
     double totalDistance = 0.0;
     double totalWords = 0.0;
-    EditDistance editDistance = new EditDistance();
-    for (JumbleProblem problem : problems) {
-      List<String> correctSentence = problem.getCorrectSentence();
+    for (int p = 0; p < results.size(); p++) {
       double sumDistance = 0.0;
       double numGuesses = 0.0;
-      for (List<String> guess : problem.getNBestSentences()) {
-        double distance = editDistance.getDistance(correctSentence, guess);
+      for (double distance : results.distances.get(p)) {
         sumDistance += distance;
         numGuesses += 1.0;
       }
       totalDistance += sumDistance / numGuesses;
-      totalWords += correctSentence.size();
+      totalWords += results.correctSentences.get(p).size();
     }
     return totalDistance / totalWords;
   }
 
-  /** 
-   * Takes a list of Enron problems, extracts the correct
-   * answer from each problem, and returns a collection of the correct
-   * sentences.
+  /**
+   * Computes the word error rate and "% correct" score, as
+   * computeWordErrorRate() does, of orderings found by the decoder for
+   * the words of each correct sentence, rather than of choices from the
+   * given candidates.  Sentences are decoded in parallel, each on one
+   * thread.
+   */
+  static Pair<Double,Double> computeUnscrambledWordErrorRate(final JumbleDecoder decoder,
+                                                             final List<List<String>> correctSentences,
+                                                             boolean showGuesses) {
+    final List<List<String>> guesses = new ArrayList<List<String>>(correctSentences);
+    final double[] distances = new double[correctSentences.size()];
+    final EditDistance editDistance = new EditDistance();
+    Parallel.forEachDynamic(correctSentences.size(), new Parallel.IndexTask() {
+      public void run(int p) {
+        List<String> guess = decoder.decode(correctSentences.get(p));
+        guesses.set(p, guess);
+        distances[p] = editDistance.getDistance(correctSentences.get(p), guess);
+      }
+    });
+    double totalWER = 0.0;
+    int absoluteCorrect = 0;
+    if( showGuesses ) System.out.println("***Unscrambled Enron Emails***");
+    for (int p = 0; p < correctSentences.size(); p++) {
+      if( showGuesses ) {
+	for( String token : guesses.get(p) ) System.out.print(token + " ");
+	System.out.println();
+      }
+      if (distances[p] == 0)
+        absoluteCorrect++;
+      totalWER += distances[p] / correctSentences.get(p).size();
+    }
+    if( showGuesses ) System.out.println("******");
+    return new Pair<Double,Double>(totalWER / correctSentences.size(),
+                                   (double) absoluteCorrect / correctSentences.size());
+  }
+
+  /**
+   * Parses minimum counts given as "C2,C3,..." for the orders from 2 up,
+   * into an array indexed by order, or returns null for no cutoffs.
+   */
+  static int[] parseCutoffs(String cutoffs) {
+    if (cutoffs == null)
+      return null;
+    String[] fields = cutoffs.split(",");
+    int[] minCounts = new int[fields.length + 2];
+    for (int i = 0; i < fields.length; i++) {
+      minCounts[i + 2] = Integer.parseInt(fields[i].trim());
+    }
+    return minCounts;
+  }
+
+  /**
+   * Returns the heap in use after a few rounds of garbage collection, as
+   * a rough measure of the memory held by live objects.
    */
-  static Collection<List<String>> getCorrectSentences(List<JumbleProblem> jumbleProblems) {
-    Collection<List<String>> correctSentences = new ArrayList<List<String>>();
-    for (JumbleProblem jProblem : jumbleProblems) {
-      correctSentences.add(jProblem.getCorrectSentence());
+  static long getUsedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
     }
-    return correctSentences;
+    return runtime.totalMemory() - runtime.freeMemory();
   }
 
   // =======================================================================
@@ -193,8 +360,23 @@ public class LanguageModelTester {
     options.put("-showguesses",       "false");  // show rebuilt Enron emails?
     options.put("-jumble",       "false");  // run Jumble (Enron) evaluation?
     options.put("-baselines", "true");  // compute WER baselines?
+    options.put("-unscramble", "false");  // also unscramble the correct answers by beam search?
+    options.put("-beam",      Integer.toString(JumbleDecoder.DEFAULT_BEAM_WIDTH));  // for -unscramble
     options.put("-generate",  "true");  // generate some sentences?
     options.put("-check",     "true");  // check probabilities sum to 1
+    options.put("-holdout",   "0.1");  // of the training data, to tune interpolation weights on
+    // -save FILE writes the trained model; -load FILE replaces training
+    // -order N and -smoothing NAME configure cs224n.langmodel.NGramLanguageModel
+    // -freeze trie (or true) replaces a trained NGramLanguageModel by its
+    // FrozenLanguageModel; -freeze hash by a HashedLanguageModel with -bits BITS;
+    // -freeze mapped by the same tables memory-mapped off the heap (to map a
+    // saved hashed model, -model cs224n.langmodel.MappedLanguageModel -load FILE)
+    // -cutoffs C2,C3,.. drops k-grams seen fewer than Ck times when freezing;
+    // -prune THRESHOLD prunes the frozen model by relative entropy, or
+    // -prunesize MB prunes it to fit in MB megabytes in the -freeze layout
+    // (both freeze if needed, and only one may be given)
+    options.put("-memory",    "false");  // report the memory held by the model?
+    options.put("-threads",   Integer.toString(Parallel.getNumThreads()));  // for counting and scoring
 
     // let command-line options supersede defaults .........................
     options.putAll(CommandLineUtils.simpleCommandLineParser(args));
@@ -203,6 +385,10 @@ public class LanguageModelTester {
       System.out.printf("  %-12s: %s%n", entry.getKey(), entry.getValue());
     }
     System.out.println();
+    if (options.get("-prune") != null && options.get("-prunesize") != null)
+      throw new IllegalArgumentException("Give either -prune or -prunesize, not both");
+
+    Parallel.setNumThreads(Integer.parseInt(options.get("-threads")));
 
     // set up file locations ...............................................
     String dataPath  = options.get("-data");
@@ -213,23 +399,23 @@ public class LanguageModelTester {
 
     // load sentence data ..................................................
     System.out.println("Training data will be read from " + trainFile);
-    Collection<List<String>> trainSentences = Sentences.Reader.readSentences(trainFile);
+    Collection<List<String>> trainSentences = MappedSentences.Reader.readSentences(trainFile);
     // System.out.println("Validation data will be read from " + validFile);
     // Collection<List<String>> validSentences = Sentences.Reader.readSentences(validFile);
     System.out.println("Testing data will be read from  " + testFile + "\n");
-    Collection<List<String>> testSentences = Sentences.Reader.readSentences(testFile);
+    Collection<List<String>> testSentences = MappedSentences.Reader.readSentences(testFile);
 
     // load jumbled sentence problems ................................
-    List<JumbleProblem> jumbleProblems = null;
+    JumbleProblem.Stream jumbleProblems = null;
     if ("true".equals(options.get("-jumble"))) {
 
-      System.out.print("Loading Jumble problems from " + jumblePath + " ...");
-      jumbleProblems = JumbleProblem.Reader.readJumbleProblems(jumblePath);
+      System.out.print("Opening Jumble problems in " + jumblePath + " ...");
+      jumbleProblems = JumbleProblem.Reader.streamJumbleProblems(jumblePath);
       System.out.println();
       if (jumbleProblems.size() == 0) {
         System.out.println("WARNING: failed to read Jumble problems");
       } else {
-        System.out.println("Read " + jumbleProblems.size() + " Jumble problems");
+        System.out.println("Found " + jumbleProblems.size() + " Jumble problems");
       }
     }
     
@@ -240,18 +426,96 @@ public class LanguageModelTester {
       @SuppressWarnings("unchecked")
       Class modelClass = Class.forName(options.get("-model"));
       model = (LanguageModel) modelClass.newInstance();
+      if (model.getClass() == NGramLanguageModel.class &&
+          (options.get("-order") != null || options.get("-smoothing") != null)) {
+        String order = options.get("-order");
+        String smoothing = options.get("-smoothing");
+        model = new NGramLanguageModel(order == null ? NGramLanguageModel.DEFAULT_ORDER : Integer.parseInt(order),
+                                       smoothing == null ? "KneserNey" : smoothing);
+      }
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
     System.out.println("Created model: " + model);
+    boolean reportMemory = "true".equals(options.get("-memory"));
+    long baseMemory = (reportMemory ? getUsedMemory() : 0);
 
-    // train model .........................................................
-    System.out.print("Training model" +
-                     // trainSentences.size() is slow, because disk-backed!!!
-                     // " on " + trainSentences.size() + " sentences" +
-                     " from " + trainFile + " ... ");
-    model.train(trainSentences);
-    System.out.println("done\n");
+    // train model, or load a saved one ....................................
+    if (options.get("-load") != null) {
+      System.out.print("Loading model from " + options.get("-load") + " ... ");
+      model.load(options.get("-load"));
+      System.out.println("done\n");
+    } else {
+      // an NGramLanguageModel interpolated linearly tunes its weights on
+      // the last sentences of the training data, held out from the counts
+      Collection<List<String>> countSentences = trainSentences;
+      List<List<String>> heldOutSentences = null;
+      double holdout = Double.parseDouble(options.get("-holdout"));
+      if (model instanceof NGramLanguageModel && holdout > 0.0 &&
+          ((NGramLanguageModel) model).getSmoothing() instanceof LinearInterpolationSmoothing) {
+        List<List<String>> sentences = new ArrayList<List<String>>(trainSentences);
+        int numCounted = (int) Math.round(sentences.size() * (1.0 - holdout));
+        countSentences = sentences.subList(0, numCounted);
+        heldOutSentences = sentences.subList(numCounted, sentences.size());
+      }
+      System.out.print("Training model" +
+                       " on " + countSentences.size() + " sentences" +
+                       " from " + trainFile + " ... ");
+      model.train(countSentences);
+      System.out.println("done\n");
+      if (heldOutSentences != null) {
+        System.out.print("Validating model on " + heldOutSentences.size() + " held-out sentences ... ");
+        model.validate(heldOutSentences);
+        System.out.println("done\n");
+      }
+    }
+    String freeze = options.get("-freeze");
+    if ((freeze == null || "false".equals(freeze)) &&
+        (options.get("-cutoffs") != null || options.get("-prune") != null ||
+         options.get("-prunesize") != null))
+      freeze = "trie";
+    if (freeze != null && !"false".equals(freeze)) {
+      if (reportMemory)
+        System.out.printf("%-30s%.1f MB%n", "Model memory: ", (getUsedMemory() - baseMemory) / 1e6);
+      if (model instanceof NGramLanguageModel) {
+        System.out.print("Freezing model ... ");
+        FrozenLanguageModel frozen = ((NGramLanguageModel) model).freeze(parseCutoffs(options.get("-cutoffs")));
+        String bits = options.get("-bits");
+        int numBits = (bits == null ? HashedLanguageModel.DEFAULT_BITS : Integer.parseInt(bits));
+        boolean hashed = ("hash".equals(freeze) || "mapped".equals(freeze));
+        if (options.get("-prune") != null) {
+          frozen = frozen.prune(Double.parseDouble(options.get("-prune")));
+        } else if (options.get("-prunesize") != null) {
+          long maxBytes = (long) (Double.parseDouble(options.get("-prunesize")) * 1e6);
+          frozen = (hashed ? frozen.pruneToHashedSize(maxBytes, numBits) : frozen.pruneToSize(maxBytes));
+        }
+        HashedLanguageModel hashedModel = (hashed ? frozen.hash(numBits) : null);
+        if (options.get("-cutoffs") != null || options.get("-prune") != null ||
+            options.get("-prunesize") != null)
+          System.out.printf("%d n-grams, %.1f MB ... ", frozen.size(),
+                            (hashed ? hashedModel.getMemorySize() : frozen.getMemorySize()) / 1e6);
+        if ("hash".equals(freeze)) {
+          model = hashedModel;
+        } else if ("mapped".equals(freeze)) {
+          File file = File.createTempFile("model", ".hashed");
+          file.deleteOnExit();
+          hashedModel.save(file.getPath());
+          model = new MappedLanguageModel(file.getPath());
+        } else {
+          model = frozen;
+        }
+        System.out.println("done\n");
+      } else {
+        System.out.println("WARNING: only an NGramLanguageModel can be frozen\n");
+      }
+    }
+    if (reportMemory)
+      System.out.printf("%-30s%.1f MB%n%n", "Model memory: ", (getUsedMemory() - baseMemory) / 1e6);
+    if (options.get("-save") != null) {
+      System.out.print("Saving model to " + options.get("-save") + " ... ");
+      model.save(options.get("-save"));
+      System.out.println("done\n");
+    }
 
     // check if the probability distribution of the model sums up properly
     if ("true".equals(options.get("-check"))) {
@@ -276,8 +540,11 @@ public class LanguageModelTester {
 
     // evaluate on Jumble data ................................................
     if ("true".equals(options.get("-jumble"))) {
+      // Score every candidate once, reading the problems as we go.
+      JumbleResults jumbleResults = evaluateJumbleProblems(model, jumbleProblems);
+
       System.out.printf("%-30s","Enron Jumble Perplexity: ");
-      System.out.println(nf.format(computePerplexity(model, getCorrectSentences(jumbleProblems))));
+      System.out.println(nf.format(computePerplexity(model, jumbleResults.correctSentences)));
 
       // If we want to print the guessed email
       boolean showGuesses = false;
@@ -285,7 +552,7 @@ public class LanguageModelTester {
 	showGuesses = true;
 
       // Get the WER and % correct scores.
-      Pair<Double,Double> results = computeWordErrorRate(model, jumbleProblems, showGuesses);
+      Pair<Double,Double> results = computeWordErrorRate(jumbleResults, showGuesses);
       System.out.printf("%-30s","Enron Word Error Rate: ");
       System.out.println(nf.format(results.getFirst()));
       System.out.printf("%-30s","Enron Percent Correct: ");
@@ -295,9 +562,20 @@ public class LanguageModelTester {
         System.out.println();
         System.out.println("Enron WER Baselines: ");
         System.out.printf("%-30s"," Worst Path: ");
-	System.out.println(nf.format(computeWordErrorRateUpperBound(jumbleProblems)));
+	System.out.println(nf.format(computeWordErrorRateUpperBound(jumbleResults)));
         System.out.printf("%-30s"," Random Path: ");
-	System.out.println(nf.format(computeWordErrorRateRandomChoice(jumbleProblems)));
+	System.out.println(nf.format(computeWordErrorRateRandomChoice(jumbleResults)));
+      }
+
+      if ("true".equals(options.get("-unscramble"))) {
+        JumbleDecoder decoder = new JumbleDecoder(model, Integer.parseInt(options.get("-beam")));
+        Pair<Double,Double> unscrambled =
+          computeUnscrambledWordErrorRate(decoder, jumbleResults.correctSentences, showGuesses);
+        System.out.println();
+        System.out.printf("%-30s","Unscrambled Word Error Rate: ");
+        System.out.println(nf.format(unscrambled.getFirst()));
+        System.out.printf("%-30s","Unscrambled Percent Correct: ");
+        System.out.println(nf.format(100*unscrambled.getSecond()) + "%");
       }
     }
 
@@ -0,0 +1,220 @@
+package cs224n.benchmarks;
+
+import cs224n.langmodel.HashedLanguageModel;
+import cs224n.langmodel.LanguageModel;
+import cs224n.langmodel.MappedLanguageModel;
+import cs224n.langmodel.NGramLanguageModel;
+import cs224n.util.MappedSentences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks for the language models in cs224n.langmodel: training
+ * throughput (reported as sentences per second), getSentenceLogProbability()
+ * latency, getSentenceLogProbabilities() latency on n-best lists of
+ * shuffled test sentences, checkModel() time and sentence generation rate.
+ *
+ * Each model is benchmarked on a corpus chosen by the "corpus" parameter:
+ * either "synthetic", a Zipf-distributed corpus of the given size and
+ * vocabulary generated from a fixed seed, or the name of a file with one
+ * sentence per line, of which the first "sentences" lines are used for
+ * training, the following tenth as much for scoring and the tenth after
+ * that for validate(), which tunes the interpolated models' weights
+ * before they are benchmarked.  For example
+ *
+ *   java -jar benchmarks/target/benchmarks.jar LanguageModelBenchmark.score \
+ *     -p model=KatzBackoffTrigram -p sentences=50000 -prof gc
+ *
+ * measures scoring latency of the Katz trigram model on a synthetic corpus
+ * of 50000 sentences; the gc profiler adds the allocation rate.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LanguageModelBenchmark {
+
+  @Param({ "EmpiricalUnigram", "GoodTuringUnigram", "AbsoluteDiscountUnigram",
+           "Bigram", "KatzBackoffBigram", "KneserNeyBigram",
+           "FixedInterpBigram", "ValidInterpBigram",
+           "Trigram", "KatzBackoffTrigram", "KneserNeyTrigram",
+           "FixedInterpTrigram", "ValidInterpTrigram", "NGram" })
+  public String model;
+
+  @Param({ "synthetic" })
+  public String corpus;
+
+  @Param({ "20000" })
+  public int sentences;
+
+  @Param({ "10000" })
+  public int vocabulary;
+
+  // score the trained model frozen into a FrozenLanguageModel ("trie"), a
+  // HashedLanguageModel ("hash") or a MappedLanguageModel of a saved hashed
+  // model ("mapped"), rather than as trained ("false"); NGram models only
+  @Param({ "false" })
+  public String freeze;
+
+  private List<List<String>> trainSentences;
+  private List<List<String>> testSentences;
+  private List<List<String>> validationSentences;
+  private LanguageModel trainedModel;
+  private int nextSentence;
+  private List<List<List<String>>> nBestLists;
+  private int nextList;
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Generates sentences of 5 to 30 words drawn from a Zipf distribution
+   * over the given number of words.
+   */
+  static List<List<String>> syntheticSentences(int numSentences, int numWords, long seed) {
+    double[] cumulative = new double[numWords];
+    double sum = 0.0;
+    for (int i = 0; i < numWords; i++) {
+      sum += 1.0 / (i + 1);
+      cumulative[i] = sum;
+    }
+    Random random = new Random(seed);
+    List<List<String>> sentences = new ArrayList<List<String>>(numSentences);
+    for (int s = 0; s < numSentences; s++) {
+      int length = 5 + random.nextInt(26);
+      List<String> sentence = new ArrayList<String>(length);
+      for (int i = 0; i < length; i++) {
+        int word = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+        if (word < 0) word = -word - 1;
+        sentence.add("w" + Math.min(word, numWords - 1));
+      }
+      sentences.add(sentence);
+    }
+    return sentences;
+  }
+
+  static LanguageModel newModel(String name) {
+    try {
+      return (LanguageModel) Class.forName("cs224n.langmodel." + name + "LanguageModel").newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    int numTest = Math.max(1, sentences / 10);
+    if ("synthetic".equals(corpus)) {
+      trainSentences = syntheticSentences(sentences, vocabulary, 1);
+      testSentences = syntheticSentences(numTest, vocabulary, 2);
+      validationSentences = syntheticSentences(numTest, vocabulary, 4);
+    } else {
+      MappedSentences file = MappedSentences.Reader.readSentences(corpus);
+      trainSentences = new ArrayList<List<String>>();
+      testSentences = new ArrayList<List<String>>();
+      validationSentences = new ArrayList<List<String>>();
+      for (List<String> sentence : file) {
+        if (trainSentences.size() < sentences)
+          trainSentences.add(sentence);
+        else if (testSentences.size() < numTest)
+          testSentences.add(sentence);
+        else if (validationSentences.size() < numTest)
+          validationSentences.add(sentence);
+        else
+          break;
+      }
+      if (testSentences.isEmpty())
+        testSentences.add(trainSentences.get(trainSentences.size() - 1));
+    }
+    Random random = new Random(3);
+    nBestLists = new ArrayList<List<List<String>>>();
+    for (List<String> sentence : testSentences.subList(0, Math.min(100, testSentences.size()))) {
+      List<List<String>> nBest = new ArrayList<List<String>>();
+      for (int i = 0; i < 20; i++) {
+        List<String> candidate = new ArrayList<String>(sentence);
+        Collections.shuffle(candidate, random);
+        nBest.add(candidate);
+      }
+      nBestLists.add(nBest);
+    }
+    trainedModel = newModel(model);
+    trainedModel.train(trainSentences);
+    if (!validationSentences.isEmpty())
+      trainedModel.validate(validationSentences);
+    if ("trie".equals(freeze))
+      trainedModel = ((NGramLanguageModel) trainedModel).freeze();
+    else if ("hash".equals(freeze))
+      trainedModel = ((NGramLanguageModel) trainedModel).freeze().hash(HashedLanguageModel.DEFAULT_BITS);
+    else if ("mapped".equals(freeze)) {
+      File file = File.createTempFile("model", ".hashed");
+      file.deleteOnExit();
+      ((NGramLanguageModel) trainedModel).freeze().hash(HashedLanguageModel.DEFAULT_BITS).save(file.getPath());
+      trainedModel = new MappedLanguageModel(file.getPath());
+    }
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Counts the sentences trained on, so that JMH reports training
+   * throughput in sentences per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class TrainCounters {
+    public long sentences;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      sentences = 0;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public LanguageModel train(TrainCounters counters) {
+    LanguageModel languageModel = newModel(model);
+    languageModel.train(trainSentences);
+    counters.sentences += trainSentences.size();
+    return languageModel;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double score() {
+    List<String> sentence = testSentences.get(nextSentence);
+    nextSentence = (nextSentence + 1 == testSentences.size() ? 0 : nextSentence + 1);
+    return trainedModel.getSentenceLogProbability(sentence);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double[] scoreNBest() {
+    List<List<String>> nBest = nBestLists.get(nextList);
+    nextList = (nextList + 1 == nBestLists.size() ? 0 : nextList + 1);
+    return trainedModel.getSentenceLogProbabilities(nBest);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public double checkModel() {
+    return trainedModel.checkModel();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void generateSentence(Blackhole blackhole) {
+    blackhole.consume(trainedModel.generateSentence());
+  }
+
+}
@@ -0,0 +1,25 @@
+package cs224n.langmodel;
+
+/**
+ * Interpolated absolute discounting: every seen n-gram gives up the same
+ * discount D, estimated for each order from the number of n-grams seen
+ * once and twice as D = n1 / (n1 + 2 n2).
+ */
+public class AbsoluteDiscountSmoothing extends InterpolatedDiscountSmoothing {
+
+  protected double[] discounts;   // by n-gram length
+
+  protected void estimateDiscounts() {
+    double[][] countOfCounts = getCountOfCounts(2);
+    discounts = new double[order + 1];
+    for (int depth = 1; depth <= order; depth++) {
+      double[] n = countOfCounts[depth];
+      discounts[depth] = (n[1] > 0.0 ? n[1] / (n[1] + 2.0 * n[2]) : 0.5);
+    }
+  }
+
+  protected double discount(int depth, int count) {
+    return discounts[depth];
+  }
+
+}
@@ -0,0 +1,214 @@
+package cs224n.langmodel;
+
+import cs224n.util.Index;
+
+import java.util.*;
+
+/**
+ * The common part of the read-only models in backoff form (see
+ * FrozenLanguageModel and HashedLanguageModel): every stored n-gram has a
+ * log probability and every stored history a log backoff weight, and
+ * p(w | h) = b(h) p(w | h') for every word w never seen after h, as in an
+ * ARPA file.  Subclasses say how the n-grams are stored and looked up;
+ * scoring, checking and generation are shared here.
+ *
+ * Sentences are padded as in NGramLanguageModel.  The models cannot be
+ * trained or validated.
+ */
+public abstract class BackoffLanguageModel implements LanguageModel {
+
+  protected int order;
+  protected Index<String> vocabulary;   // word ids are unigram positions
+  protected float logUnknown;           // of an unknown word after no history
+
+  // -----------------------------------------------------------------------
+
+  public int getOrder() {
+    return order;
+  }
+
+  /**
+   * The number of n-grams stored.
+   */
+  public abstract long size();
+
+  /**
+   * Returns the natural log of the probability of ids[index] after the
+   * words before it, where unknown words have id -1.
+   */
+  protected abstract double getLogProbability(int[] ids, int index);
+
+  /**
+   * Returns a random history of at most order - 1 words that the model
+   * has seen, for checkModel().
+   */
+  protected abstract int[] sampleHistory(Random generator);
+
+  public void train(Collection<List<String>> trainingSentences) {
+    throw new UnsupportedOperationException("A frozen model cannot be trained");
+  }
+
+  public void validate(Collection<List<String>> validationData) {
+    throw new UnsupportedOperationException("A frozen model cannot be validated");
+  }
+
+  // -----------------------------------------------------------------------
+
+  protected int[] getWordIds(List<String> sentence) {
+    int[] ids = new int[sentence.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = vocabulary.indexOf(sentence.get(i));
+    }
+    return ids;
+  }
+
+  public double getWordProbability(List<String> sentence, int index) {
+    return Math.exp(getWordLogProbability(sentence, index));
+  }
+
+  /**
+   * Returns the natural log of the probability of the word specified by
+   * the argument sentence and index.
+   */
+  public double getWordLogProbability(List<String> sentence, int index) {
+    int from = Math.max(0, index - order + 1);
+    return getLogProbability(getWordIds(sentence.subList(from, index + 1)), index - from);
+  }
+
+  public double getSentenceProbability(List<String> sentence) {
+    return Math.exp(getSentenceLogProbability(sentence));
+  }
+
+  /**
+   * Returns the natural log of the probability of the specified sentence,
+   * padded as in NGramLanguageModel.
+   */
+  public double getSentenceLogProbability(List<String> sentence) {
+    int[] ids = getWordIds(NGramCounts.pad(sentence, order));
+    double logProb = 0.0;
+    for (int index = order - 1; index < ids.length; index++) {
+      logProb += getLogProbability(ids, index);
+    }
+    return logProb;
+  }
+
+  /**
+   * Returns the natural log of the probability of each of a batch of
+   * sentences, sharing word lookups and n-gram scores between them (see
+   * BatchScorer).
+   */
+  public double[] getSentenceLogProbabilities(List<List<String>> sentences) {
+    return new BatchScorer(order) {
+      int getWordId(String word) {
+        return vocabulary.indexOf(word);
+      }
+      double getLogProbability(int[] ids, int index) {
+        return BackoffLanguageModel.this.getLogProbability(ids, index);
+      }
+    }.score(sentences);
+  }
+
+  /**
+   * Returns the state before the first word of a sentence: the word ids
+   * of the order - 1 start tokens.
+   */
+  public HistoryState beginSentence() {
+    int[] ids = new int[order - 1];
+    Arrays.fill(ids, vocabulary.indexOf(NGramCounts.START));
+    return new HistoryState.Ids(0.0, ids);
+  }
+
+  /**
+   * Scores a word after the word ids of the state, so that only the new
+   * word is looked up in the vocabulary.
+   */
+  public HistoryState score(HistoryState state, String word) {
+    int[] history = ((HistoryState.Ids) state).ids;
+    int[] context = Arrays.copyOf(history, order);
+    context[order - 1] = vocabulary.indexOf(word);
+    double logProb = getLogProbability(context, order - 1);
+    return new HistoryState.Ids(logProb, Arrays.copyOfRange(context, 1, order));
+  }
+
+  /**
+   * Returns the probability of every word of the vocabulary after the
+   * given words, with the start token (which is never predicted) left at
+   * zero and the unknown word in the last slot.
+   */
+  protected double[] getDistribution(int[] ids) {
+    int start = vocabulary.indexOf(NGramCounts.START);
+    double[] probs = new double[vocabulary.size() + 1];
+    int[] context = Arrays.copyOf(ids, ids.length + 1);
+    for (int word = 0; word <= vocabulary.size(); word++) {
+      if (word == start)
+        continue;
+      context[ids.length] = (word < vocabulary.size() ? word : -1);
+      probs[word] = Math.exp(getLogProbability(context, ids.length));
+    }
+    return probs;
+  }
+
+  /**
+   * Checks that the distributions after up to 100 random seen histories
+   * sum to one, and returns the sum that differs from one the most.
+   */
+  public double checkModel() {
+    Random generator = new Random();
+    double highestVarianceSum = 1.0; // Keep track of which sum differs from 1.0 the most
+    if (vocabulary.size() == 0)
+      return highestVarianceSum;
+    for (int i = 0; i < 100; i++) {
+      double sum = 0.0;
+      for (double prob : getDistribution(sampleHistory(generator))) {
+        sum += prob;
+      }
+      if (Math.abs(sum - 1.0) > Math.abs(highestVarianceSum - 1.0))
+        highestVarianceSum = sum;
+    }
+    return highestVarianceSum;
+  }
+
+  /**
+   * Returns the index of a word drawn from the given distribution, as
+   * returned by getDistribution(), or the vocabulary size for the unknown
+   * word.
+   */
+  protected int sample(double[] probs, Random generator) {
+    double total = 0.0;
+    for (double prob : probs) {
+      total += prob;
+    }
+    double sample = generator.nextDouble() * total;
+    for (int word = 0; word < vocabulary.size(); word++) {
+      sample -= probs[word];
+      if (sample < 0.0)
+        return word;
+    }
+    return vocabulary.size();
+  }
+
+  /**
+   * Returns a random word following the given words, drawn from the full
+   * distribution of the model.  This costs a pass over the vocabulary.
+   */
+  public String generateWord(List<String> history) {
+    int word = sample(getDistribution(getWordIds(history)), new Random());
+    return (word < vocabulary.size() ? vocabulary.get(word) : "*UNKNOWN*");
+  }
+
+  /**
+   * Returns a random sentence sampled according to the model.  We generate
+   * words until the stop token is generated, and return the concatenation.
+   */
+  public List<String> generateSentence() {
+    List<String> words = NGramCounts.pad(new ArrayList<String>(), order);
+    words.remove(words.size() - 1);
+    String word = generateWord(words);
+    while (!word.equals(NGramCounts.STOP)) {
+      words.add(word);
+      word = generateWord(words.subList(Math.max(0, words.size() - order + 1), words.size()));
+    }
+    return new ArrayList<String>(words.subList(order - 1, words.size()));
+  }
+
+}
@@ -0,0 +1,134 @@
+package cs224n.langmodel;
+
+import cs224n.util.LongCounter;
+import cs224n.util.Parallel;
+
+import java.util.*;
+
+/**
+ * Scores a batch of sentences, such as the candidate orderings of an
+ * n-best list, for the models that score words by integer id.  Since the
+ * candidates of a list share their words and most of their n-grams, each
+ * distinct word is looked up in the model once per batch, sentences are
+ * padded into reused id buffers rather than new lists, and the log
+ * probability of each distinct n-gram is computed once: n-grams are keyed
+ * by the batch-local ids of their words packed into a long.  Large
+ * batches are split into blocks scored on the threads of
+ * cs224n.util.Parallel, each with its own buffers and memo.
+ */
+abstract class BatchScorer {
+
+  private static final int MIN_BLOCK = 128;
+
+  private final int order;
+  private final int bits;        // per local id in a memo key
+  private final int maxLocalIds;
+
+  BatchScorer(int order) {
+    this.order = order;
+    bits = Math.min(30, 63 / order);
+    maxLocalIds = 1 << bits;
+  }
+
+  /**
+   * Returns the model's id of a word, or -1 for an unknown word.
+   */
+  abstract int getWordId(String word);
+
+  /**
+   * Returns the natural log of the probability of ids[index] after the
+   * order - 1 ids before it.
+   */
+  abstract double getLogProbability(int[] ids, int index);
+
+  /**
+   * Returns the natural log of the probability of each sentence, padded
+   * with order - 1 start tokens and a stop token.
+   */
+  double[] score(final List<List<String>> sentences) {
+    final double[] logProbs = new double[sentences.size()];
+    final int numBlocks = Math.max(1, Math.min(Parallel.getNumThreads(), sentences.size() / MIN_BLOCK));
+    Parallel.forEach(numBlocks, new Parallel.IndexTask() {
+      public void run(int block) {
+        int from = (int) ((long) sentences.size() * block / numBlocks);
+        int to = (int) ((long) sentences.size() * (block + 1) / numBlocks);
+        new Block().score(sentences, from, to, logProbs);
+      }
+    });
+    return logProbs;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * The buffers and memo of one block of sentences.
+   */
+  private class Block {
+
+    private Map<String, Integer> localIds = new HashMap<String, Integer>();
+    private int[] modelIds = new int[64];   // by local id
+    private LongCounter memo = new LongCounter();
+    private int[] locals = new int[64];     // the padded sentence, by local id
+    private int[] ids = new int[64];        // and by model id
+
+    private int getLocalId(String word) {
+      Integer local = localIds.get(word);
+      if (local == null) {
+        local = localIds.size();
+        localIds.put(word, local);
+        if (local == modelIds.length)
+          modelIds = Arrays.copyOf(modelIds, 2 * local);
+        modelIds[local] = getWordId(word);
+      }
+      return local;
+    }
+
+    void score(List<List<String>> sentences, int from, int to, double[] logProbs) {
+      for (int s = from; s < to; s++) {
+        List<String> sentence = sentences.get(s);
+        int length = sentence.size() + order;
+        if (length > ids.length) {
+          locals = new int[2 * length];
+          ids = new int[2 * length];
+        }
+        // start afresh when the local ids of this sentence might not fit
+        // in a key; a sentence too long for that is scored without memo
+        if (localIds.size() + length > maxLocalIds) {
+          localIds.clear();
+          memo = new LongCounter();
+        }
+        boolean memoize = (length <= maxLocalIds);
+        for (int i = 0; i < length; i++) {
+          String word = (i < order - 1 ? NGramCounts.START :
+                         i < length - 1 ? sentence.get(i - order + 1) : NGramCounts.STOP);
+          if (memoize) {
+            locals[i] = getLocalId(word);
+            ids[i] = modelIds[locals[i]];
+          } else {
+            ids[i] = getWordId(word);
+          }
+        }
+        double logProb = 0.0;
+        for (int index = order - 1; index < length; index++) {
+          if (!memoize) {
+            logProb += getLogProbability(ids, index);
+            continue;
+          }
+          long key = 0L;
+          for (int i = index - order + 1; i <= index; i++) {
+            key = (key << bits) | locals[i];
+          }
+          if (memo.containsKey(key)) {
+            logProb += memo.getCount(key);
+          } else {
+            double wordLogProb = getLogProbability(ids, index);
+            memo.setCount(key, wordLogProb);
+            logProb += wordLogProb;
+          }
+        }
+        logProbs[s] = logProb;
+      }
+    }
+  }
+
+}
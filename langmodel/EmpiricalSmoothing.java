@@ -0,0 +1,17 @@
+package cs224n.langmodel;
+
+/**
+ * Relative frequencies plus a single fictitious count per history for the
+ * words never seen after it: a word seen c(h w) times after h gets
+ * c(h w) / (c(h) + 1), and the remaining 1 / (c(h) + 1) backs off to the
+ * next lower order as in KatzSmoothing.  At order 1 the only word never
+ * seen is the unknown word, which thus gets 1 / (N + 1), as if it had
+ * been seen once in training.
+ */
+public class EmpiricalSmoothing extends KatzSmoothing {
+
+  protected double getSeenProbability(int depth, int count, double historyCount) {
+    return count / (historyCount + 1.0);
+  }
+
+}
@@ -0,0 +1,697 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+import cs224n.util.Index;
+import cs224n.util.Parallel;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A read-only n-gram model in backoff form (see BackoffLanguageModel),
+ * made by freezing a trained NGramLanguageModel (see
+ * NGramLanguageModel.freeze()).  Each n-gram stores the log probability
+ * the smoothing gave it and, if it is a history, its log backoff weight
+ * b(h), which is what the smoothing leaves for unseen words.  For the
+ * interpolated and Katz smoothings this reproduces the model exactly (up
+ * to float rounding); for linear interpolation the unseen words come out
+ * as a renormalized backoff approximation.
+ *
+ * The n-grams are laid out as a trie over reversed n-grams, one level per
+ * order, in sorted primitive arrays (as in SRILM and KenLM): the level-1
+ * entry of a word is its word id, and the children of an entry at level k
+ * are the range offsets[k][i] to offsets[k][i + 1] of level k + 1, sorted
+ * by the word prepended.  Since the n-gram u w and the history u are both
+ * reached from their last word, scoring a word is two walks of at most
+ * order binary searches each: one for the longest seen n-gram ending in
+ * the word, one collecting the backoff weights of the longer histories.
+ */
+public class FrozenLanguageModel extends BackoffLanguageModel {
+
+  private static final double MIN_BACKOFF_MASS = 1e-10;
+  private static final double MIN_RENORMALIZED_MASS = 1e-4;
+
+  private int[][] words;              // [level][i], for levels 2..order
+  private float[][] logProbs;         // [level][i]
+  private float[][] logBackoffs;      // [level][i], for levels 1..order-1
+  private int[][] offsets;            // [level][i], for levels 1..order-1
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Constructs an empty model, to load() a frozen model into.
+   */
+  public FrozenLanguageModel() {
+    order = 1;
+    vocabulary = new Index<String>();
+    words = new int[2][0];
+    logProbs = new float[2][0];
+    logBackoffs = new float[1][0];
+    offsets = new int[1][0];
+    logUnknown = Float.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Freezes the given counts and smoothing, leaving out the n-grams of
+   * each order k >= 2 seen fewer than minCounts[k] times (see
+   * getKeptNodes()).  Their probability mass goes to the backoff weights
+   * of their histories.
+   */
+  FrozenLanguageModel(final CountTrie counts, final NGramSmoothing smoothing, int[] minCounts) {
+    order = counts.getOrder();
+    vocabulary = counts.getIndex();
+    int size = counts.size();
+    boolean[] kept = getKeptNodes(counts, minCounts);
+
+    // the probability of every n-gram under the smoothing, in parallel
+    final double[] probs = new double[size];
+    Parallel.forEach(size, new Parallel.IndexTask() {
+      public void run(int n) {
+        if (n == 0)
+          return;
+        int[] histories = new int[order];
+        Arrays.fill(histories, -1);
+        int depth = counts.getDepth(n);
+        histories[depth - 1] = counts.getParent(n);
+        for (int k = depth - 1; k > 0; k--) {
+          histories[k - 1] = counts.getSuffix(histories[k]);
+        }
+        probs[n] = smoothing.getProbability(histories, counts.getWord(n));
+      }
+    });
+    int[] noHistory = new int[order];
+    Arrays.fill(noHistory, -1);
+    noHistory[0] = counts.root();
+    logUnknown = (float) Math.log(smoothing.getProbability(noHistory, -1));
+
+    // backoff weights, from the mass of the words seen after each history
+    // under it and under its suffix; words never predicted in training
+    // (the start token) are left out, as they are by the smoothings
+    boolean[] predicted = new boolean[vocabulary.size()];
+    for (int word = 0; word < predicted.length; word++) {
+      predicted[word] = (counts.getCount(counts.getChild(counts.root(), word)) > 0);
+    }
+    double[] seenMass = new double[size];
+    double[] lowerMass = new double[size];
+    for (int n = 1; n < size; n++) {
+      if (kept[n] && counts.getDepth(n) >= 2 && predicted[counts.getWord(n)]) {
+        seenMass[counts.getParent(n)] += probs[n];
+        lowerMass[counts.getParent(n)] += probs[counts.getSuffix(n)];
+      }
+    }
+    double[] backoffs = new double[size];
+    for (int h = 1; h < size; h++) {
+      double denominator = 1.0 - lowerMass[h];
+      backoffs[h] = (denominator > MIN_BACKOFF_MASS ?
+                     Math.max(0.0, 1.0 - seenMass[h]) / denominator : 0.0);
+    }
+
+    // lay out each level: the level-1 position of a word is its id, and
+    // the entries of level k + 1 are grouped by the position of their
+    // suffix at level k, then sorted by their first word
+    int[] firstWords = new int[size];
+    int[] levelSizes = new int[order + 1];
+    for (int n = 1; n < size; n++) {
+      int depth = counts.getDepth(n);
+      firstWords[n] = (depth == 1 ? counts.getWord(n) : firstWords[counts.getParent(n)]);
+      if (kept[n])
+        levelSizes[depth]++;
+    }
+    int[] positions = new int[size];
+    words = new int[order + 1][];
+    logProbs = new float[order + 1][];
+    logBackoffs = new float[order][];
+    offsets = new int[order][];
+    for (int level = 1; level <= order; level++) {
+      long[] entries = new long[levelSizes[level]];   // first word, node
+      if (level == 1) {
+        for (int n = 1; n < size; n++) {
+          if (counts.getDepth(n) == 1)
+            entries[counts.getWord(n)] = ((long) counts.getWord(n) << 32) | n;
+        }
+      } else {
+        int[] levelOffsets = new int[levelSizes[level - 1] + 1];
+        for (int n = 1; n < size; n++) {
+          if (kept[n] && counts.getDepth(n) == level)
+            levelOffsets[positions[counts.getSuffix(n)] + 1]++;
+        }
+        for (int i = 0; i < levelSizes[level - 1]; i++) {
+          levelOffsets[i + 1] += levelOffsets[i];
+        }
+        int[] next = Arrays.copyOf(levelOffsets, levelSizes[level - 1]);
+        for (int n = 1; n < size; n++) {
+          if (kept[n] && counts.getDepth(n) == level)
+            entries[next[positions[counts.getSuffix(n)]]++] = ((long) firstWords[n] << 32) | n;
+        }
+        for (int i = 0; i < levelSizes[level - 1]; i++) {
+          Arrays.sort(entries, levelOffsets[i], levelOffsets[i + 1]);
+        }
+        offsets[level - 1] = levelOffsets;
+        words[level] = new int[entries.length];
+      }
+      logProbs[level] = new float[entries.length];
+      if (level < order)
+        logBackoffs[level] = new float[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        int n = (int) entries[i];
+        positions[n] = i;
+        if (level > 1)
+          words[level][i] = (int) (entries[i] >>> 32);
+        logProbs[level][i] = (float) Math.log(probs[n]);
+        if (level < order)
+          logBackoffs[level][i] = (float) Math.log(backoffs[n]);
+      }
+    }
+    if (order == 1)
+      offsets = new int[1][0];
+  }
+
+  /**
+   * Returns which nodes of the trie to freeze: every unigram, and every
+   * n-gram of order k >= 2 seen at least minCounts[k] times (all of them
+   * where minCounts[k] is at most 1 or missing), along with the suffix
+   * and the history of each n-gram kept, which the layout and the
+   * backoff walk need.  Both are one word shorter, so a pass per order
+   * from the highest down marks them all.
+   */
+  private static boolean[] getKeptNodes(CountTrie counts, int[] minCounts) {
+    int order = counts.getOrder();
+    boolean[] kept = new boolean[counts.size()];
+    for (int n = 1; n < kept.length; n++) {
+      int depth = counts.getDepth(n);
+      int minCount = (minCounts != null && depth < minCounts.length ? minCounts[depth] : 0);
+      kept[n] = (depth == 1 || minCount <= 1 || counts.getCount(n) >= minCount);
+    }
+    for (int depth = order; depth > 2; depth--) {
+      for (int n = 1; n < kept.length; n++) {
+        if (kept[n] && counts.getDepth(n) == depth) {
+          kept[counts.getParent(n)] = true;
+          kept[counts.getSuffix(n)] = true;
+        }
+      }
+    }
+    return kept;
+  }
+
+  public long size() {
+    long size = 0;
+    for (int level = 1; level <= order; level++) {
+      size += logProbs[level].length;
+    }
+    return size;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Writes the frozen arrays to a binary model file.
+   */
+  public void save(String filename) throws IOException {
+    ModelFile.Writer file = new ModelFile.Writer(filename, this);
+    file.writeInt(order);
+    file.writeWords(vocabulary);
+    file.writeDouble(logUnknown);
+    for (int level = 1; level <= order; level++) {
+      if (level > 1)
+        file.writeInts(words[level]);
+      file.writeFloats(logProbs[level]);
+      if (level < order) {
+        file.writeFloats(logBackoffs[level]);
+        file.writeInts(offsets[level]);
+      }
+    }
+    file.close();
+  }
+
+  /**
+   * Loads a model written by save().
+   */
+  public void load(String filename) throws IOException {
+    ModelFile.Reader file = new ModelFile.Reader(filename, this);
+    order = file.readInt();
+    vocabulary = file.readWords();
+    logUnknown = (float) file.readDouble();
+    words = new int[order + 1][];
+    logProbs = new float[order + 1][];
+    logBackoffs = new float[order][];
+    offsets = new int[order][];
+    for (int level = 1; level <= order; level++) {
+      if (level > 1)
+        words[level] = file.readInts();
+      logProbs[level] = file.readFloats();
+      if (level < order) {
+        logBackoffs[level] = file.readFloats();
+        offsets[level] = file.readInts();
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of this model in hash tables, with the log
+   * probabilities above the unigrams quantized to the given number of bits
+   * (see HashedLanguageModel).
+   */
+  public HashedLanguageModel hash(int bits) {
+    long[][] fingerprints = new long[order + 1][];
+    fingerprints[1] = new long[logProbs[1].length];
+    for (int word = 0; word < fingerprints[1].length; word++) {
+      fingerprints[1][word] = HashedLanguageModel.fingerprint(word);
+    }
+    for (int level = 2; level <= order; level++) {
+      fingerprints[level] = new long[logProbs[level].length];
+      for (int parent = 0; parent < logProbs[level - 1].length; parent++) {
+        for (int i = offsets[level - 1][parent]; i < offsets[level - 1][parent + 1]; i++) {
+          fingerprints[level][i] = HashedLanguageModel.extend(fingerprints[level - 1][parent], words[level][i]);
+        }
+      }
+    }
+    float[][] centers = new float[order + 1][];
+    int[][] codes = new int[order + 1][];
+    float[][] quantized = new float[order + 1][];
+    quantized[1] = logProbs[1];
+    for (int level = 2; level <= order; level++) {
+      centers[level] = HashedLanguageModel.getCodebook(logProbs[level], bits);
+      codes[level] = new int[logProbs[level].length];
+      quantized[level] = new float[logProbs[level].length];
+      for (int i = 0; i < codes[level].length; i++) {
+        codes[level][i] = HashedLanguageModel.encode(centers[level], logProbs[level][i]);
+        quantized[level][i] = centers[level][codes[level][i]];
+      }
+    }
+    return new HashedLanguageModel(order, vocabulary, logUnknown, fingerprints, logProbs[1],
+                                   centers, codes, getLogBackoffs(quantized), bits);
+  }
+
+  /**
+   * Returns the log backoff weights that make the distributions of this
+   * trie sum to one with the given log probabilities, in place of its own:
+   * lower ones, as after quantization, or those of a pruned copy, whose
+   * own weights are still those of the model it was pruned from.
+   * Histories after which the lower order leaves too little mass for the
+   * sum to be trusted (at float precision) keep their own weight.
+   */
+  private float[][] getLogBackoffs(float[][] logProbs) {
+    double[][][] masses = getMasses(logProbs, getParents(), getHistories());
+    float[][] backoffs = new float[order][];
+    for (int level = 1; level < order; level++) {
+      backoffs[level] = new float[logProbs[level].length];
+      for (int h = 0; h < backoffs[level].length; h++) {
+        double denominator = 1.0 - masses[1][level][h];
+        backoffs[level][h] = (denominator > MIN_RENORMALIZED_MASS ?
+                              (float) Math.log(Math.max(0.0, 1.0 - masses[0][level][h]) / denominator) :
+                              logBackoffs[level][h]);
+      }
+    }
+    return backoffs;
+  }
+
+  /**
+   * Returns, for each history, the total probability of the words seen
+   * after it ([0][level][h]) and of the same words after its suffix
+   * ([1][level][h]), under the given log probabilities.  Entries whose
+   * last word is the start token, which is never predicted, are left out.
+   */
+  private double[][][] getMasses(float[][] logProbs, int[][] parents, int[][] histories) {
+    int[][] lastWords = getLastWords(parents);
+    int start = vocabulary.indexOf(NGramCounts.START);
+    double[][][] masses = new double[2][order][];
+    for (int level = 1; level < order; level++) {
+      masses[0][level] = new double[logProbs[level].length];
+      masses[1][level] = new double[logProbs[level].length];
+    }
+    for (int level = 2; level <= order; level++) {
+      for (int i = 0; i < logProbs[level].length; i++) {
+        if (lastWords[level][i] != start) {
+          masses[0][level - 1][histories[level][i]] += Math.exp(logProbs[level][i]);
+          masses[1][level - 1][histories[level][i]] += Math.exp(logProbs[level - 1][parents[level][i]]);
+        }
+      }
+    }
+    return masses;
+  }
+
+  /**
+   * Returns the position at level k - 1 of the parent of each entry at
+   * level k >= 2: the n-gram without its first word.
+   */
+  private int[][] getParents() {
+    int[][] parents = new int[order + 1][];
+    for (int level = 2; level <= order; level++) {
+      parents[level] = new int[logProbs[level].length];
+      for (int parent = 0; parent < logProbs[level - 1].length; parent++) {
+        for (int i = offsets[level - 1][parent]; i < offsets[level - 1][parent + 1]; i++) {
+          parents[level][i] = parent;
+        }
+      }
+    }
+    return parents;
+  }
+
+  /**
+   * Returns the position at level k - 1 of the history of each entry at
+   * level k >= 2: the n-gram without its last word.  The history of an
+   * n-gram x u w is found from that of its parent u w, which is u, by one
+   * search for x.
+   */
+  private int[][] getHistories() {
+    int[][] parents = getParents();
+    int[][] histories = new int[order + 1][];
+    for (int level = 2; level <= order; level++) {
+      histories[level] = new int[logProbs[level].length];
+      for (int i = 0; i < histories[level].length; i++) {
+        histories[level][i] = (level == 2 ? words[level][i] :
+                               find(level - 2, histories[level - 1][parents[level][i]], words[level][i]));
+      }
+    }
+    return histories;
+  }
+
+  private int[][] getLastWords(int[][] parents) {
+    int[][] lastWords = new int[order + 1][];
+    for (int level = 2; level <= order; level++) {
+      lastWords[level] = new int[logProbs[level].length];
+      for (int i = 0; i < lastWords[level].length; i++) {
+        lastWords[level][i] = (level == 2 ? parents[level][i] : lastWords[level - 1][parents[level][i]]);
+      }
+    }
+    return lastWords;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the number of bytes taken by an entry at the given level.
+   */
+  private int getEntryBytes(int level) {
+    return 4 * (1 + (level > 1 ? 1 : 0) + (level < order ? 2 : 0));
+  }
+
+  /**
+   * Returns the number of bytes taken by the arrays of this model, not
+   * counting the vocabulary.
+   */
+  public long getMemorySize() {
+    long bytes = 0;
+    for (int level = 1; level <= order; level++) {
+      bytes += (long) getEntryBytes(level) * logProbs[level].length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns a copy of this model without every n-gram whose removal alone
+   * raises the perplexity of the model by less than the given relative
+   * amount (as SRILM's -prune), renormalizing the backoff weights.
+   *
+   * This is Stolcke's relative-entropy pruning: removing the n-gram h w
+   * changes the model only after h, where w and the words unseen after h
+   * are then given by the backoff, so the increase in entropy is
+   *
+   *   -P(h) [ p(w|h) log(b'(h) p(w|h') / p(w|h)) + U(h) log(b'(h) / b(h)) ]
+   *
+   * where h' is h without its first word, U(h) is the mass of the words
+   * unseen after h, and b'(h) = (U(h) + p(w|h)) / (1 - L(h) + p(w|h')),
+   * L(h) being the mass after h' of the words seen after h.  P(h) is the
+   * probability of h by the chain rule, with start tokens given.  Every
+   * n-gram is scored against this model, and n-grams that are the
+   * history or the parent of one kept are kept too.  Unigrams are never
+   * pruned.
+   */
+  public FrozenLanguageModel prune(double threshold) {
+    return prune(getPruningScores(), Math.log1p(threshold));
+  }
+
+  /**
+   * Returns the largest copy of this model pruned as by prune() that
+   * takes at most the given number of bytes (see getMemorySize()), by a
+   * binary search for the threshold.  If even the unigrams take more, the
+   * copy keeps only the n-grams prune() must keep.
+   */
+  public FrozenLanguageModel pruneToSize(long maxBytes) {
+    return pruneToSize(maxBytes, 0);
+  }
+
+  /**
+   * Returns the largest copy of this model pruned as by prune() whose
+   * hash(bits) takes at most the given number of bytes (see
+   * HashedLanguageModel.getMemorySize()), which with its empty slots and
+   * 8-byte keys is more than the copy itself takes.
+   */
+  public FrozenLanguageModel pruneToHashedSize(long maxBytes, int bits) {
+    if (bits < 1 || bits > 16)
+      throw new IllegalArgumentException("Cannot quantize to " + bits + " bits");
+    return pruneToSize(maxBytes, bits);
+  }
+
+  /**
+   * Prunes to a size in this layout with bits = 0, or in the hashed
+   * layout with the given bits.
+   */
+  private FrozenLanguageModel pruneToSize(long maxBytes, int bits) {
+    float[][] scores = getPruningScores();
+    int numScores = 0;
+    for (int level = 2; level <= order; level++) {
+      numScores += scores[level].length;
+    }
+    float[] cuts = new float[numScores + 1];
+    int c = 0;
+    for (int level = 2; level <= order; level++) {
+      System.arraycopy(scores[level], 0, cuts, c, scores[level].length);
+      c += scores[level].length;
+    }
+    cuts[numScores] = Float.POSITIVE_INFINITY;
+    Arrays.sort(cuts);
+    int low = 0;
+    int high = numScores;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (getMemorySize(getKept(scores, cuts[middle]), bits) <= maxBytes)
+        high = middle;
+      else
+        low = middle + 1;
+    }
+    return prune(scores, cuts[low]);
+  }
+
+  private FrozenLanguageModel prune(float[][] scores, double cut) {
+    return new FrozenLanguageModel(this, getKept(scores, cut));
+  }
+
+  /**
+   * Returns the entropy increase (in nats) of removing each n-gram of
+   * level k >= 2 alone, or infinity for n-grams ending in the start
+   * token, which only serve as histories.
+   */
+  private float[][] getPruningScores() {
+    int[][] parents = getParents();
+    int[][] histories = getHistories();
+    int[][] lastWords = getLastWords(parents);
+    double[][][] masses = getMasses(logProbs, parents, histories);
+    int start = vocabulary.indexOf(NGramCounts.START);
+
+    // the log probability of each history, by the chain rule
+    double[][] logHistoryProbs = new double[order][];
+    if (order > 1) {
+      logHistoryProbs[1] = new double[logProbs[1].length];
+      for (int word = 0; word < logProbs[1].length; word++) {
+        logHistoryProbs[1][word] = (word == start ? 0.0 : logProbs[1][word]);
+      }
+    }
+    for (int level = 2; level < order; level++) {
+      logHistoryProbs[level] = new double[logProbs[level].length];
+      for (int i = 0; i < logProbs[level].length; i++) {
+        logHistoryProbs[level][i] = logHistoryProbs[level - 1][histories[level][i]] +
+          (lastWords[level][i] == start ? 0.0 : logProbs[level][i]);
+      }
+    }
+
+    float[][] scores = new float[order + 1][];
+    for (int level = 2; level <= order; level++) {
+      scores[level] = new float[logProbs[level].length];
+      for (int i = 0; i < scores[level].length; i++) {
+        if (lastWords[level][i] == start) {
+          scores[level][i] = Float.POSITIVE_INFINITY;
+          continue;
+        }
+        int h = histories[level][i];
+        double prob = Math.exp(logProbs[level][i]);
+        double lowerProb = Math.exp(logProbs[level - 1][parents[level][i]]);
+        double unseen = Math.max(0.0, 1.0 - masses[0][level - 1][h]);
+        double logBackoff = Math.log((unseen + prob) / (1.0 - masses[1][level - 1][h] + lowerProb));
+        double change = prob * (logBackoff + Math.log(lowerProb) - Math.log(prob));
+        if (unseen > 0.0)
+          change += unseen * (logBackoff - Math.log(unseen / (1.0 - masses[1][level - 1][h])));
+        scores[level][i] = (float) Math.max(0.0, -Math.exp(logHistoryProbs[level - 1][h]) * change);
+      }
+    }
+    return scores;
+  }
+
+  /**
+   * Returns which entries to keep when pruning the n-grams scoring below
+   * the cut: every unigram, every n-gram scoring at least the cut, and
+   * the history and parent of every n-gram kept, marked level by level
+   * from the highest down.
+   */
+  private boolean[][] getKept(float[][] scores, double cut) {
+    int[][] parents = getParents();
+    int[][] histories = getHistories();
+    boolean[][] kept = new boolean[order + 1][];
+    kept[1] = new boolean[logProbs[1].length];
+    Arrays.fill(kept[1], true);
+    boolean[] required = new boolean[order == 1 ? 0 : logProbs[order].length];
+    for (int level = order; level >= 2; level--) {
+      kept[level] = required;
+      required = (level > 2 ? new boolean[logProbs[level - 1].length] : kept[1]);
+      for (int i = 0; i < kept[level].length; i++) {
+        if (scores[level][i] >= cut)
+          kept[level][i] = true;
+        if (kept[level][i]) {
+          required[parents[level][i]] = true;
+          required[histories[level][i]] = true;
+        }
+      }
+    }
+    return kept;
+  }
+
+  private long getMemorySize(boolean[][] kept, int bits) {
+    int[] entries = new int[order + 1];
+    for (int level = 1; level <= order; level++) {
+      for (boolean entry : kept[level]) {
+        if (entry)
+          entries[level]++;
+      }
+    }
+    if (bits > 0)
+      return HashedLanguageModel.getMemorySize(order, bits, entries);
+    long bytes = 0;
+    for (int level = 1; level <= order; level++) {
+      bytes += (long) getEntryBytes(level) * entries[level];
+    }
+    return bytes;
+  }
+
+  /**
+   * Copies the kept entries of a model, whose parents must be kept too,
+   * and recomputes the backoff weights.
+   */
+  private FrozenLanguageModel(FrozenLanguageModel model, boolean[][] kept) {
+    order = model.order;
+    vocabulary = model.vocabulary;
+    logUnknown = model.logUnknown;
+    words = new int[order + 1][];
+    logProbs = new float[order + 1][];
+    logBackoffs = new float[order][];
+    offsets = new int[order][];
+    logProbs[1] = model.logProbs[1];
+    if (order > 1)
+      logBackoffs[1] = model.logBackoffs[1];
+    else
+      offsets = new int[1][0];
+    int[] parentPositions = new int[logProbs[1].length];   // new positions at the level below
+    for (int word = 0; word < parentPositions.length; word++) {
+      parentPositions[word] = word;
+    }
+    for (int level = 2; level <= order; level++) {
+      int size = 0;
+      for (boolean entry : kept[level]) {
+        if (entry)
+          size++;
+      }
+      words[level] = new int[size];
+      logProbs[level] = new float[size];
+      if (level < order)
+        logBackoffs[level] = new float[size];
+      int[] levelOffsets = new int[logProbs[level - 1].length + 1];
+      int[] positions = new int[kept[level].length];
+      int next = 0;
+      for (int parent = 0; parent < kept[level - 1].length; parent++) {
+        if (!kept[level - 1][parent])
+          continue;
+        levelOffsets[parentPositions[parent]] = next;
+        for (int i = model.offsets[level - 1][parent]; i < model.offsets[level - 1][parent + 1]; i++) {
+          if (kept[level][i]) {
+            positions[i] = next;
+            words[level][next] = model.words[level][i];
+            logProbs[level][next] = model.logProbs[level][i];
+            if (level < order)
+              logBackoffs[level][next] = model.logBackoffs[level][i];
+            next++;
+          }
+        }
+      }
+      levelOffsets[logProbs[level - 1].length] = next;
+      offsets[level - 1] = levelOffsets;
+      parentPositions = positions;
+    }
+    logBackoffs = getLogBackoffs(logProbs);
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the position at the next level of the child of the entry at
+   * the given position and level for the given word, or -1 if there is
+   * none.  Level 0 stands for the root, whose children are the words.
+   */
+  private int find(int level, int position, int word) {
+    if (word < 0)
+      return -1;
+    if (level == 0)
+      return (word < logProbs[1].length ? word : -1);
+    int[] levelOffsets = offsets[level];
+    int found = Arrays.binarySearch(words[level + 1], levelOffsets[position],
+                                    levelOffsets[position + 1], word);
+    return (found >= 0 ? found : -1);
+  }
+
+  /**
+   * Returns the natural log of the probability of ids[index] after the
+   * words before it.
+   */
+  protected double getLogProbability(int[] ids, int index) {
+    int maxContext = Math.min(order - 1, index);
+    int matched = 0;   // context words matched along with the word
+    int position = find(0, 0, ids[index]);
+    double logProb = (position >= 0 ? logProbs[1][position] : logUnknown);
+    while (position >= 0 && matched < maxContext) {
+      position = find(matched + 1, position, ids[index - matched - 1]);
+      if (position >= 0) {
+        matched++;
+        logProb = logProbs[matched + 1][position];
+      }
+    }
+    // back off through the histories longer than the matched one
+    position = 0;
+    for (int j = 1; j <= maxContext; j++) {
+      position = find(j - 1, position, ids[index - j]);
+      if (position < 0)
+        break;
+      if (j > matched)
+        logProb += logBackoffs[j][position];
+    }
+    return logProb;
+  }
+
+  /**
+   * Returns the context of a random entry at a random level below the
+   * highest, by walking down the trie.
+   */
+  protected int[] sampleHistory(Random generator) {
+    int[] context = new int[order - 1];
+    int position = 0;
+    int length = 0;
+    for (int level = 0; level < order - 1; level++) {
+      int begin = (level == 0 ? 0 : offsets[level][position]);
+      int end = (level == 0 ? vocabulary.size() : offsets[level][position + 1]);
+      if (begin == end)
+        break;
+      position = begin + generator.nextInt(end - begin);
+      context[order - 2 - level] = (level == 0 ? position : words[level + 1][position]);
+      length++;
+    }
+    return Arrays.copyOfRange(context, order - 1 - length, order - 1);
+  }
+
+}
@@ -0,0 +1,35 @@
+package cs224n.langmodel;
+
+/**
+ * Interpolated Good-Turing smoothing: an n-gram seen r times, for r up to
+ * MAX_DISCOUNTED, keeps the Good-Turing count r* = (r + 1) n(r + 1) / n(r),
+ * where n(r) is the number of n-grams of its order seen r times.  More
+ * frequent n-grams, and counts for which the estimate is not a discount,
+ * are left alone.
+ */
+public class GoodTuringSmoothing extends InterpolatedDiscountSmoothing {
+
+  static final int MAX_DISCOUNTED = 5;
+
+  private double[][] discounts;   // [n-gram length][count]
+
+  protected void estimateDiscounts() {
+    double[][] countOfCounts = getCountOfCounts(MAX_DISCOUNTED + 1);
+    discounts = new double[order + 1][MAX_DISCOUNTED + 1];
+    for (int depth = 1; depth <= order; depth++) {
+      double[] n = countOfCounts[depth];
+      for (int r = 1; r <= MAX_DISCOUNTED; r++) {
+        if (n[r] == 0.0)
+          continue;
+        double rStar = (r + 1) * n[r + 1] / n[r];
+        if (rStar > 0.0 && rStar < r)
+          discounts[depth][r] = r - rStar;
+      }
+    }
+  }
+
+  protected double discount(int depth, int count) {
+    return (count <= MAX_DISCOUNTED ? discounts[depth][count] : 0.0);
+  }
+
+}
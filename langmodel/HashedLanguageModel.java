@@ -0,0 +1,388 @@
+package cs224n.langmodel;
+
+import cs224n.util.Index;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A read-only n-gram model in backoff form (see BackoffLanguageModel)
+ * stored in hash tables, for the fastest scoring: made from a frozen model
+ * by FrozenLanguageModel.hash().  As in KenLM's probing layout, each order
+ * above the unigrams is an open-addressing table with linear probing,
+ * keyed by a 64-bit fingerprint of the n-gram's word ids, with the values
+ * in parallel primitive arrays; the unigrams are stored directly by word
+ * id.  A lookup is a multiply, a shift and usually one or two probes, and
+ * since the fingerprint of an n-gram extends that of the n-gram without
+ * its first word, scoring a word hashes each context word once.
+ * Fingerprints are not checked against the words, so two n-grams could in
+ * principle collide, with odds of about one in 2^64 per pair.
+ *
+ * Above the unigrams the log probabilities are quantized to a given
+ * number of bits (at most 16), with a codebook per order: the sorted
+ * values are split into 2^bits bins of equal size, and each value is
+ * rounded down to the least value of its bin.  The codes take a byte each
+ * with 8 bits or fewer, and a char otherwise.  Since rounding down only
+ * frees mass, the backoff weights can then be recomputed from the
+ * quantized probabilities, so that each distribution sums to one again
+ * wherever it has enough unseen mass to take up what was freed.  They are
+ * kept as floats: a backoff scales the whole unseen mass of its history,
+ * so quantizing it would throw the sums off by as much as its
+ * quantization error.  With the default 16 bits the model scores within
+ * about 1e-4 of the frozen one; with 8 bits histories followed by nearly
+ * every word lose a few percent of their mass.
+ *
+ * A saved model can also be used in place, off the heap, by a
+ * MappedLanguageModel.
+ */
+public class HashedLanguageModel extends BackoffLanguageModel {
+
+  public static final int DEFAULT_BITS = 16;
+  static final long EMPTY = 0L;
+  private static final double SLOTS_PER_ENTRY = 1.5;
+
+  protected int bits;
+  protected float[] unigramLogProbs;    // by word id
+  protected float[] unigramLogBackoffs; // by word id, if order > 1
+  protected int[] sizes;                // [level], entries per level
+  private long[][] keys;                // [level][slot], for levels 2..order
+  private byte[][] byteCodes;           // [level][slot], if bits <= 8
+  private char[][] charCodes;           // [level][slot], if bits > 8
+  protected float[][] centers;          // [level][code]
+  private float[][] logBackoffs;        // [level][slot], for levels 2..order-1
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Constructs an empty model, to load() a hashed model into.
+   */
+  public HashedLanguageModel() {
+    order = 1;
+    vocabulary = new Index<String>();
+    logUnknown = Float.NEGATIVE_INFINITY;
+    bits = DEFAULT_BITS;
+    unigramLogProbs = new float[0];
+    unigramLogBackoffs = new float[0];
+    allocate();
+  }
+
+  /**
+   * Builds the tables from the n-grams of a frozen model, given by level:
+   * the fingerprint of each n-gram (as made by fingerprint() and
+   * extend()), the codebook and codes of its log probability and, below
+   * the highest order, its log backoff.  Level-1 entries are indexed by
+   * word id and their log probabilities are not quantized.
+   */
+  HashedLanguageModel(int order, Index<String> vocabulary, float logUnknown, long[][] fingerprints,
+                      float[] unigramLogProbs, float[][] centers, int[][] codes,
+                      float[][] logBackoffs, int bits) {
+    if (bits < 1 || bits > 16)
+      throw new IllegalArgumentException("Cannot quantize to " + bits + " bits");
+    this.order = order;
+    this.vocabulary = vocabulary;
+    this.logUnknown = logUnknown;
+    this.bits = bits;
+    this.unigramLogProbs = unigramLogProbs;
+    unigramLogBackoffs = (order > 1 ? logBackoffs[1] : new float[0]);
+    allocate();
+    for (int level = 2; level <= order; level++) {
+      int size = fingerprints[level].length;
+      int capacity = (size == 0 ? 0 : (int) (size * SLOTS_PER_ENTRY) + 1);
+      sizes[level] = size;
+      keys[level] = new long[capacity];
+      if (bits <= 8)
+        byteCodes[level] = new byte[capacity];
+      else
+        charCodes[level] = new char[capacity];
+      this.centers[level] = centers[level];
+      if (level < order)
+        this.logBackoffs[level] = new float[capacity];
+      for (int i = 0; i < size; i++) {
+        long key = fingerprints[level][i];
+        int slot = getSlot(key, capacity);
+        while (keys[level][slot] != EMPTY && keys[level][slot] != key) {
+          slot = (slot + 1 == capacity ? 0 : slot + 1);
+        }
+        keys[level][slot] = key;
+        if (bits <= 8)
+          byteCodes[level][slot] = (byte) codes[level][i];
+        else
+          charCodes[level][slot] = (char) codes[level][i];
+        if (level < order)
+          this.logBackoffs[level][slot] = logBackoffs[level][i];
+      }
+    }
+  }
+
+  private void allocate() {
+    sizes = new int[order + 1];
+    keys = new long[order + 1][0];
+    byteCodes = new byte[order + 1][0];
+    charCodes = new char[order + 1][0];
+    centers = new float[order + 1][0];
+    logBackoffs = new float[order][0];
+  }
+
+  public int getBits() {
+    return bits;
+  }
+
+  public long size() {
+    long size = unigramLogProbs.length;
+    for (int level = 2; level <= order; level++) {
+      size += sizes[level];
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of bytes taken by the tables of this model, not
+   * counting the vocabulary.
+   */
+  public long getMemorySize() {
+    int[] entries = sizes.clone();
+    entries[1] = unigramLogProbs.length;
+    return getMemorySize(order, bits, entries);
+  }
+
+  /**
+   * Returns the number of bytes the tables of a hashed model of the given
+   * order and bits take with the given number of entries at each level,
+   * counting the empty slots and the codebooks.
+   */
+  static long getMemorySize(int order, int bits, int[] entries) {
+    long bytes = 4L * entries[1] * (order > 1 ? 2 : 1);
+    for (int level = 2; level <= order; level++) {
+      long capacity = (entries[level] == 0 ? 0 : (long) (entries[level] * SLOTS_PER_ENTRY) + 1);
+      bytes += capacity * (8 + (bits <= 8 ? 1 : 2) + (level < order ? 4 : 0));
+      bytes += 4L * Math.min(1 << bits, entries[level]);
+    }
+    return bytes;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the codebook for the given values: the least values of 2^bits
+   * equal bins of the sorted finite values, in ascending order.  (Only
+   * the start token, which is never predicted, has an infinite log
+   * probability; it gets the least code.)
+   */
+  static float[] getCodebook(float[] values, int bits) {
+    float[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int first = 0;
+    while (first < sorted.length - 1 && sorted[first] == Float.NEGATIVE_INFINITY) {
+      first++;
+    }
+    int numCodes = Math.min(1 << bits, sorted.length - first);
+    float[] centers = new float[numCodes];
+    for (int code = 0; code < numCodes; code++) {
+      long begin = (long) code * (sorted.length - first) / numCodes;
+      centers[code] = sorted[first + (int) begin];
+    }
+    return centers;
+  }
+
+  /**
+   * Returns the code of the greatest center not above the given value (or
+   * of the least center, for a value below them all).
+   */
+  static int encode(float[] centers, float value) {
+    int found = Arrays.binarySearch(centers, value);
+    if (found >= 0) {
+      while (found + 1 < centers.length && centers[found + 1] == value) {
+        found++;
+      }
+      return found;
+    }
+    return Math.max(0, -found - 2);
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Writes the tables to a binary model file.
+   */
+  public void save(String filename) throws IOException {
+    ModelFile.Writer file = new ModelFile.Writer(filename, this);
+    file.writeInt(order);
+    file.writeInt(bits);
+    file.writeWords(vocabulary);
+    file.writeDouble(logUnknown);
+    file.writeFloats(unigramLogProbs);
+    file.writeFloats(unigramLogBackoffs);
+    file.writeInts(sizes);
+    for (int level = 2; level <= order; level++) {
+      file.writeLongs(keys[level]);
+      file.writeFloats(centers[level]);
+      if (bits <= 8)
+        file.writeBytes(byteCodes[level]);
+      else
+        file.writeChars(charCodes[level]);
+      if (level < order)
+        file.writeFloats(logBackoffs[level]);
+    }
+    file.close();
+  }
+
+  /**
+   * Loads a model written by save().
+   */
+  public void load(String filename) throws IOException {
+    ModelFile.Reader file = readUnigrams(filename);
+    for (int level = 2; level <= order; level++) {
+      keys[level] = file.readLongs();
+      centers[level] = file.readFloats();
+      if (bits <= 8)
+        byteCodes[level] = file.readBytes();
+      else
+        charCodes[level] = file.readChars();
+      if (level < order)
+        logBackoffs[level] = file.readFloats();
+    }
+  }
+
+  /**
+   * Opens a model file written by save() and reads everything up to the
+   * tables of the higher orders, which are left to the caller.
+   */
+  protected ModelFile.Reader readUnigrams(String filename) throws IOException {
+    ModelFile.Reader file = new ModelFile.Reader(filename, HashedLanguageModel.class);
+    order = file.readInt();
+    bits = file.readInt();
+    vocabulary = file.readWords();
+    logUnknown = (float) file.readDouble();
+    unigramLogProbs = file.readFloats();
+    unigramLogBackoffs = file.readFloats();
+    allocate();
+    sizes = file.readInts();
+    return file;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the fingerprint of a single word.
+   */
+  static long fingerprint(int word) {
+    return mix(word + 1L);
+  }
+
+  /**
+   * Returns the fingerprint of an n-gram with the given word prepended,
+   * from the fingerprint of the n-gram.
+   */
+  static long extend(long fingerprint, int word) {
+    return mix(fingerprint * 0x9e3779b97f4a7c15L + word + 1L);
+  }
+
+  private static long mix(long key) {
+    // MurmurHash3 finalizer, as in LongCounter; 0 marks empty slots
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (key == EMPTY ? 1L : key);
+  }
+
+  /**
+   * Returns the home slot of a key in a table of the given capacity, from
+   * the high bits of the key, without a division.
+   */
+  static int getSlot(long key, int capacity) {
+    return (int) (((key >>> 32) * capacity) >>> 32);
+  }
+
+  /**
+   * Returns the slot of the given key at the given level, or -1 if the
+   * key is not in the table.
+   */
+  protected int find(int level, long key) {
+    long[] levelKeys = keys[level];
+    if (levelKeys.length == 0)
+      return -1;
+    int slot = getSlot(key, levelKeys.length);
+    while (levelKeys[slot] != key) {
+      if (levelKeys[slot] == EMPTY)
+        return -1;
+      slot = (slot + 1 == levelKeys.length ? 0 : slot + 1);
+    }
+    return slot;
+  }
+
+  protected float getLogProb(int level, int slot) {
+    int code = (bits <= 8 ? byteCodes[level][slot] & 0xff : charCodes[level][slot]);
+    return centers[level][code];
+  }
+
+  protected float getLogBackoff(int level, int slot) {
+    return logBackoffs[level][slot];
+  }
+
+  /**
+   * Returns the natural log of the probability of ids[index] after the
+   * words before it, with one walk for the longest seen n-gram ending in
+   * the word and one for the backoffs of the longer histories.  The
+   * histories no longer than that n-gram are seen, so their fingerprints
+   * are extended without a probe.
+   */
+  protected double getLogProbability(int[] ids, int index) {
+    int maxContext = Math.min(order - 1, index);
+    int word = ids[index];
+    int matched = 0;   // context words matched along with the word
+    double logProb = logUnknown;
+    if (word >= 0) {
+      logProb = unigramLogProbs[word];
+      long key = fingerprint(word);
+      while (matched < maxContext && ids[index - matched - 1] >= 0) {
+        key = extend(key, ids[index - matched - 1]);
+        int slot = find(matched + 2, key);
+        if (slot < 0)
+          break;
+        matched++;
+        logProb = getLogProb(matched + 1, slot);
+      }
+    }
+    long key = EMPTY;
+    for (int j = 1; j <= maxContext; j++) {
+      int context = ids[index - j];
+      if (context < 0)
+        break;
+      key = (j == 1 ? fingerprint(context) : extend(key, context));
+      if (j > matched) {
+        if (j == 1) {
+          logProb += unigramLogBackoffs[context];
+        } else {
+          int slot = find(j, key);
+          if (slot < 0)
+            break;
+          logProb += getLogBackoff(j, slot);
+        }
+      }
+    }
+    return logProb;
+  }
+
+  /**
+   * Returns the last order - 1 tokens of a sentence start followed by up
+   * to order - 1 words generated by the model, so that the histories are
+   * ones the model would meet.
+   */
+  protected int[] sampleHistory(Random generator) {
+    int[] ids = getWordIds(NGramCounts.pad(new ArrayList<String>(), order));
+    int[] context = Arrays.copyOf(ids, 2 * (order - 1));
+    int stop = ids[ids.length - 1];
+    int length = order - 1;
+    int numWords = generator.nextInt(order);
+    for (int i = 0; i < numWords; i++) {
+      int word = sample(getDistribution(Arrays.copyOfRange(context, length - order + 1, length)), generator);
+      if (word == vocabulary.size() || word == stop)
+        break;
+      context[length++] = word;
+    }
+    return Arrays.copyOfRange(context, length - order + 1, length);
+  }
+
+}
@@ -0,0 +1,60 @@
+package cs224n.langmodel;
+
+import java.util.Arrays;
+
+/**
+ * The state of a sentence being scored a word at a time, from
+ * LanguageModel.beginSentence() through LanguageModel.score(): as much
+ * of the words so far as the model looks at, and the natural log of the
+ * probability of the word that led to the state.  States are immutable,
+ * so a decoder may extend one state by many words, from several threads.
+ * Two states are equal when the model scores every continuation of them
+ * alike, whatever the words that led to them, so decoders may recombine
+ * hypotheses on equal states.
+ */
+public abstract class HistoryState {
+
+  private final double logProb;
+
+  HistoryState(double logProb) {
+    this.logProb = logProb;
+  }
+
+  /**
+   * Returns the natural log of the probability of the word scored to
+   * reach this state, or zero for the state before the first word.
+   */
+  public double getLogProbability() {
+    return logProb;
+  }
+
+  public abstract boolean equals(Object o);
+
+  public abstract int hashCode();
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * A state held as integers: the trie nodes of the histories formed by
+   * the last few words (see NGramLanguageModel), or the word ids of those
+   * words (see BackoffLanguageModel).
+   */
+  static class Ids extends HistoryState {
+
+    final int[] ids;
+
+    Ids(double logProb, int[] ids) {
+      super(logProb);
+      this.ids = ids;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof Ids && Arrays.equals(ids, ((Ids) o).ids);
+    }
+
+    public int hashCode() {
+      return Arrays.hashCode(ids);
+    }
+  }
+
+}
@@ -0,0 +1,139 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+
+import java.io.IOException;
+
+/**
+ * The common form of interpolated discounting: each seen n-gram gives up
+ * part of its count, and the mass freed under a history is spread over
+ * the next lower order,
+ *
+ *   p(w | h) = (c(h w) - d(c(h w))) / c(h) + gamma(h) p(w | h')
+ *
+ * where h' is h without its first word, gamma(h) is the total discount
+ * under h divided by c(h), and below the unigrams lies a uniform
+ * distribution over the vocabulary plus one unknown word.  Subclasses say
+ * how much to discount, and may count lower orders by continuation counts
+ * (the number of distinct words seen before an n-gram) instead of raw
+ * counts.  Nothing precedes a start token, so n-grams beginning with one
+ * keep their raw counts at every order, as in modified Kneser-Ney.
+ *
+ * Probabilities are built from the unigrams up, one trie lookup per order,
+ * so scoring needs no recursion.
+ */
+public abstract class InterpolatedDiscountSmoothing implements NGramSmoothing {
+
+  protected CountTrie counts;
+  protected int order;
+  private double uniform;
+  private double[] gammas;   // per history node
+  private boolean[] startsSentence;   // per node: first word is the start token
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Whether n-grams of the given length are counted by continuation
+   * counts.  False by default.
+   */
+  protected boolean isContinuation(int depth) {
+    return false;
+  }
+
+  /**
+   * Precomputes the discounts, once the counts are known.
+   */
+  protected abstract void estimateDiscounts();
+
+  /**
+   * The discount taken from an n-gram of the given length and (adjusted)
+   * count, between 0 and the count.
+   */
+  protected abstract double discount(int depth, int count);
+
+  /**
+   * The count of a node, or its continuation count at continuation orders
+   * unless the n-gram begins with the start token.
+   */
+  protected int getCount(int node, int depth) {
+    return (isContinuation(depth) && !startsSentence[node] ? counts.getContinuationCount(node)
+                                                           : counts.getCount(node));
+  }
+
+  /**
+   * The total (adjusted) count of the children of a history node, which
+   * are of the given length.
+   */
+  protected double getHistoryCount(int history, int depth) {
+    return (isContinuation(depth) && !startsSentence[history] ? counts.getContinuationHistoryCount(history)
+                                                              : counts.getHistoryCount(history));
+  }
+
+  /**
+   * Returns, for each n-gram length k and each count r from 1 to
+   * maxCount, the number of k-grams whose (adjusted) count is r, from one
+   * pass over the trie.
+   */
+  protected double[][] getCountOfCounts(int maxCount) {
+    double[][] countOfCounts = new double[order + 1][maxCount + 1];
+    for (int n = 1; n < counts.size(); n++) {
+      int depth = counts.getDepth(n);
+      int count = getCount(n, depth);
+      if (count >= 1 && count <= maxCount)
+        countOfCounts[depth][count]++;
+    }
+    return countOfCounts;
+  }
+
+  // -----------------------------------------------------------------------
+
+  public void estimate(CountTrie counts) {
+    this.counts = counts;
+    order = counts.getOrder();
+    uniform = 1.0 / (counts.getVocabularySize() + 1);
+    int start = counts.getWordId(NGramCounts.START);
+    startsSentence = new boolean[counts.size()];
+    for (int n = 1; n < counts.size(); n++) {
+      // parents come before their children
+      startsSentence[n] = (counts.getDepth(n) == 1 ? counts.getWord(n) == start
+                                                   : startsSentence[counts.getParent(n)]);
+    }
+    estimateDiscounts();
+    gammas = new double[counts.size()];
+    for (int n = 1; n < counts.size(); n++) {
+      int depth = counts.getDepth(n);
+      int count = getCount(n, depth);
+      if (count > 0)
+        gammas[counts.getParent(n)] += discount(depth, count);
+    }
+    for (int h = 0; h < counts.size(); h++) {
+      double historyCount = getHistoryCount(h, counts.getDepth(h) + 1);
+      gammas[h] = (historyCount > 0.0 ? gammas[h] / historyCount : 1.0);
+    }
+  }
+
+  public void validate(int[][] histories, int[] words) {
+  }
+
+  public double getProbability(int[] histories, int word) {
+    double prob = uniform;
+    for (int k = 0; k < histories.length && histories[k] >= 0; k++) {
+      int history = histories[k];
+      double historyCount = getHistoryCount(history, k + 1);
+      if (historyCount == 0.0)
+        continue;
+      int node = counts.getChild(history, word);
+      int count = (node >= 0 ? getCount(node, k + 1) : 0);
+      double discounted = (count > 0 ? (count - discount(k + 1, count)) / historyCount : 0.0);
+      prob = discounted + gammas[history] * prob;
+    }
+    return prob;
+  }
+
+  public void write(ModelFile.Writer file) throws IOException {
+  }
+
+  public void read(ModelFile.Reader file) throws IOException {
+  }
+
+}
@@ -0,0 +1,284 @@
+package cs224n.langmodel;
+
+import cs224n.util.Parallel;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Weights for linearly interpolating the probabilities of several
+ * component models, with a separate set of weights for each bucket of
+ * history counts (Jelinek-Mercer style): histories seen 0, 1, 2-3, 4-7,
+ * ... times each get their own weights, so that well-attested histories
+ * can lean on the higher-order model more than rare ones.
+ *
+ * The weights are estimated by EM on held-out events.  Each event records
+ * its history bucket and the probability of its word under every
+ * component, so the estimate needs only passes over these arrays, never
+ * the counters.  Until estimate() is called every weight is zero.
+ */
+public class InterpolationWeights {
+
+  static final int NUM_BUCKETS = 8;         // 0, 1, 2-3, ..., 32-63, 64+
+  static final int MAX_ITERATIONS = 50;
+  static final double TOLERANCE = 1e-7;     // per-event log likelihood gain
+  private static final int BLOCK_SIZE = 4096;
+
+  private int numComponents;
+  private double[][] weights;      // [bucket][component]
+  private double[] pooledWeights;  // over all buckets, weighted by events
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * A table of held-out events: for each, the bucket of its history and
+   * the probability of its word under each component.
+   */
+  public static class Events {
+
+    private int numComponents;
+    private double[] probs;    // event-major, numComponents per event
+    private int[] buckets;
+    private int size;
+    private double numSentences;
+
+    public Events(int numComponents) {
+      this.numComponents = numComponents;
+      probs = new double[256 * numComponents];
+      buckets = new int[256];
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > buckets.length) {
+        capacity = Math.max(capacity, 2 * buckets.length);
+        buckets = Arrays.copyOf(buckets, capacity);
+        probs = Arrays.copyOf(probs, capacity * numComponents);
+      }
+    }
+
+    /**
+     * Adds an event whose history was seen the given number of times.
+     * The component probabilities are copied.
+     */
+    public void add(double historyCount, double[] componentProbs) {
+      ensureCapacity(size + 1);
+      buckets[size] = bucket(historyCount);
+      System.arraycopy(componentProbs, 0, probs, size * numComponents, numComponents);
+      size++;
+    }
+
+    public void addSentence() {
+      numSentences += 1.0;
+    }
+
+    public void addAll(Events other) {
+      ensureCapacity(size + other.size);
+      System.arraycopy(other.buckets, 0, buckets, size, other.size);
+      System.arraycopy(other.probs, 0, probs, size * numComponents, other.size * numComponents);
+      size += other.size;
+      numSentences += other.numSentences;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public double getNumSentences() {
+      return numSentences;
+    }
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Constructs weights (all zero) for the given number of components.
+   */
+  public InterpolationWeights(int numComponents) {
+    this.numComponents = numComponents;
+    weights = new double[NUM_BUCKETS][numComponents];
+    pooledWeights = new double[numComponents];
+  }
+
+  /**
+   * Returns the bucket for a history seen the given number of times: 0
+   * for unseen histories, then one bucket per power of two.
+   */
+  public static int bucket(double historyCount) {
+    if (historyCount < 1.0)
+      return 0;
+    int bucket = 64 - Long.numberOfLeadingZeros((long) historyCount);
+    return Math.min(bucket, NUM_BUCKETS - 1);
+  }
+
+  /**
+   * Returns the weights for histories seen the given number of times.  The
+   * array must not be modified.
+   */
+  public double[] getWeights(double historyCount) {
+    return weights[bucket(historyCount)];
+  }
+
+  /**
+   * Returns the overall share of each component across all held-out
+   * events.  The array must not be modified.
+   */
+  public double[] getPooledWeights() {
+    return pooledWeights;
+  }
+
+  /**
+   * Sets the weights of every bucket, and the pooled weights, to copies of
+   * the given ones.
+   */
+  public void setWeights(double[] componentWeights) {
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      weights[b] = componentWeights.clone();
+    }
+    pooledWeights = componentWeights.clone();
+  }
+
+  /**
+   * Returns the interpolated probability under the given weights.
+   */
+  public static double interpolate(double[] weights, double[] componentProbs) {
+    double prob = 0.0;
+    for (int j = 0; j < weights.length; j++) {
+      prob += weights[j] * componentProbs[j];
+    }
+    return prob;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Runs one E step: returns, for each bucket and component, the expected
+   * number of events generated by that component under the current
+   * weights, followed by the total log likelihood.  Blocks of events are
+   * processed in parallel and summed in order, so the result does not
+   * depend on the number of threads.
+   */
+  private double[] expectedCounts(final Events events) {
+    final int width = NUM_BUCKETS * numComponents + 1;
+    int numBlocks = (events.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    final double[][] blockCounts = new double[numBlocks][width];
+    Parallel.forEach(numBlocks, new Parallel.IndexTask() {
+      public void run(int block) {
+        double[] counts = blockCounts[block];
+        int end = Math.min(events.size, (block + 1) * BLOCK_SIZE);
+        for (int i = block * BLOCK_SIZE; i < end; i++) {
+          double[] w = weights[events.buckets[i]];
+          int offset = i * numComponents;
+          double prob = 0.0;
+          for (int j = 0; j < numComponents; j++) {
+            prob += w[j] * events.probs[offset + j];
+          }
+          if (prob <= 0.0)
+            continue;
+          int base = events.buckets[i] * numComponents;
+          for (int j = 0; j < numComponents; j++) {
+            counts[base + j] += w[j] * events.probs[offset + j] / prob;
+          }
+          counts[width - 1] += Math.log(prob);
+        }
+      }
+    });
+    double[] counts = new double[width];
+    for (double[] block : blockCounts) {
+      for (int k = 0; k < width; k++) {
+        counts[k] += block[k];
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Estimates the weights by EM on the given held-out events, starting
+   * from uniform weights and stopping when the log likelihood per event
+   * improves by less than TOLERANCE, or after MAX_ITERATIONS passes.
+   * Buckets with no held-out events take the pooled weights.
+   */
+  public void estimate(Events events) {
+    for (double[] w : weights) {
+      Arrays.fill(w, 1.0 / numComponents);
+    }
+    boolean[] seen = new boolean[NUM_BUCKETS];
+    double[] counts = null;
+    double previousLogLike = Double.NEGATIVE_INFINITY;
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      counts = expectedCounts(events);
+      double logLike = counts[counts.length - 1] / Math.max(1, events.size);
+      for (int b = 0; b < NUM_BUCKETS; b++) {
+        double total = 0.0;
+        for (int j = 0; j < numComponents; j++) {
+          total += counts[b * numComponents + j];
+        }
+        seen[b] = (total > 0.0);
+        if (!seen[b])
+          continue;
+        for (int j = 0; j < numComponents; j++) {
+          weights[b][j] = counts[b * numComponents + j] / total;
+        }
+      }
+      if (logLike - previousLogLike < TOLERANCE)
+        break;
+      previousLogLike = logLike;
+    }
+    double total = 0.0;
+    Arrays.fill(pooledWeights, 0.0);
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      for (int j = 0; j < numComponents; j++) {
+        pooledWeights[j] += counts[b * numComponents + j];
+        total += counts[b * numComponents + j];
+      }
+    }
+    for (int j = 0; j < numComponents; j++) {
+      pooledWeights[j] = (total > 0.0 ? pooledWeights[j] / total : 1.0 / numComponents);
+    }
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      if (!seen[b])
+        weights[b] = pooledWeights.clone();
+    }
+  }
+
+  // -----------------------------------------------------------------------
+
+  public void write(ModelFile.Writer file) throws IOException {
+    file.writeInt(numComponents);
+    file.writeInt(NUM_BUCKETS);
+    for (double weight : pooledWeights) {
+      file.writeDouble(weight);
+    }
+    for (double[] w : weights) {
+      for (double weight : w) {
+        file.writeDouble(weight);
+      }
+    }
+  }
+
+  public static InterpolationWeights read(ModelFile.Reader file) throws IOException {
+    InterpolationWeights result = new InterpolationWeights(file.readInt());
+    int numBuckets = file.readInt();
+    if (numBuckets != NUM_BUCKETS)
+      throw new IOException("Model file has " + numBuckets + " weight buckets, not " + NUM_BUCKETS);
+    for (int j = 0; j < result.numComponents; j++) {
+      result.pooledWeights[j] = file.readDouble();
+    }
+    for (double[] w : result.weights) {
+      for (int j = 0; j < w.length; j++) {
+        w[j] = file.readDouble();
+      }
+    }
+    return result;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      if (b > 0) sb.append(", ");
+      sb.append(Arrays.toString(weights[b]));
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,152 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Katz backoff: a seen n-gram gets its Good-Turing discounted relative
+ * frequency, and an unseen one backs off to the next lower order, scaled
+ * by a weight alpha(h) that hands it exactly the mass freed by the
+ * discounts,
+ *
+ *   alpha(h) = (1 - sum p*(w | h)) / (1 - sum p(w | h'))
+ *
+ * with both sums over the words seen after h.  Since the suffix of a seen
+ * n-gram was seen too, the lower-order sum is over precomputed
+ * probabilities of seen n-grams, so the alphas of each order come from
+ * one pass over the trie.  Every history keeps at least 1 / (c(h) + 1)
+ * of its mass for the unseen words, the seen ones being scaled down
+ * where the discounts free less, so that alpha(h) stays positive.  Where
+ * the lower order has no mass left for the unseen words, the seen ones
+ * are renormalized instead.  Below the unigrams lies a uniform
+ * distribution over the vocabulary plus one unknown word.
+ */
+public class KatzSmoothing implements NGramSmoothing {
+
+  static final int MAX_DISCOUNTED = 5;
+  static final double MIN_BACKOFF_MASS = 1e-10;
+
+  private CountTrie counts;
+  private double uniform;
+  private double[][] ratios;   // [n-gram length][count]: discounted / raw count
+  private double[] probs;      // per node: p*(w | h) of a seen n-gram
+  private double[] alphas;     // per history node
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Computes the Katz discount ratios d(r) = r* / r, renormalized so that
+   * counts above MAX_DISCOUNTED stay undiscounted.  Where that is not a
+   * discount in (0, 1], as whenever 6 n(6) >= n(1), the plain Good-Turing
+   * ratio r* / r is used, and where that is not a discount either, an
+   * absolute discount D = n1 / (n1 + 2 n2), giving (r - D) / r.
+   */
+  private void estimateRatios() {
+    int order = counts.getOrder();
+    double[][] countOfCounts = counts.getCountOfCounts(MAX_DISCOUNTED + 1, false);
+    ratios = new double[order + 1][MAX_DISCOUNTED + 1];
+    for (int depth = 1; depth <= order; depth++) {
+      double[] n = countOfCounts[depth];
+      double common = (n[1] > 0.0 ? (MAX_DISCOUNTED + 1) * n[MAX_DISCOUNTED + 1] / n[1] : 1.0);
+      double discount = (n[1] > 0.0 ? n[1] / (n[1] + 2.0 * n[2]) : 0.5);
+      for (int r = 1; r <= MAX_DISCOUNTED; r++) {
+        double ratio = 0.0;
+        double rStar = (n[r] > 0.0 ? (r + 1) * n[r + 1] / n[r] : 0.0);
+        if (rStar > 0.0 && common < 1.0)
+          ratio = (rStar / r - common) / (1.0 - common);
+        if (!(ratio > 0.0 && ratio <= 1.0))
+          ratio = rStar / r;
+        if (!(ratio > 0.0 && ratio < 1.0))
+          ratio = (r - discount) / r;
+        ratios[depth][r] = ratio;
+      }
+    }
+  }
+
+  private double ratio(int depth, int count) {
+    return (count <= MAX_DISCOUNTED ? ratios[depth][count] : 1.0);
+  }
+
+  /**
+   * The discounted probability p*(w | h) of an n-gram of the given length
+   * and count after a history seen historyCount times.
+   */
+  protected double getSeenProbability(int depth, int count, double historyCount) {
+    return ratio(depth, count) * count / historyCount;
+  }
+
+  public void estimate(CountTrie counts) {
+    this.counts = counts;
+    uniform = 1.0 / (counts.getVocabularySize() + 1);
+    estimateRatios();
+    int size = counts.size();
+    probs = new double[size];
+    alphas = new double[size];
+    double[] seenMass = new double[size];
+    double[] lowerMass = new double[size];
+    double[] scales = new double[size];   // per history: factor on the seen words
+    Arrays.fill(scales, 1.0);
+    // one order at a time, since the lower-order sums need the final
+    // probabilities of the order below
+    for (int depth = 1; depth <= counts.getOrder(); depth++) {
+      for (int n = 1; n < size; n++) {
+        int count = counts.getCount(n);
+        if (counts.getDepth(n) != depth || count == 0)
+          continue;
+        int parent = counts.getParent(n);
+        probs[n] = getSeenProbability(depth, count, counts.getHistoryCount(parent));
+        seenMass[parent] += probs[n];
+        lowerMass[parent] += (depth == 1 ? uniform : probs[counts.getSuffix(n)]);
+      }
+      for (int h = 0; h < size; h++) {
+        if (counts.getDepth(h) != depth - 1 || seenMass[h] == 0.0)
+          continue;
+        // after a history whose words were all seen too often to be
+        // discounted, nothing is freed
+        double minUnseenMass = 1.0 / (counts.getHistoryCount(h) + 1.0);
+        if (1.0 - seenMass[h] < minUnseenMass) {
+          scales[h] = (1.0 - minUnseenMass) / seenMass[h];
+          seenMass[h] = 1.0 - minUnseenMass;
+        }
+        double denominator = 1.0 - lowerMass[h];
+        if (denominator > MIN_BACKOFF_MASS) {
+          alphas[h] = (1.0 - seenMass[h]) / denominator;
+        } else {
+          scales[h] /= seenMass[h];   // nothing left to back off to
+          alphas[h] = 0.0;
+        }
+      }
+      for (int n = 1; n < size; n++) {
+        if (counts.getDepth(n) == depth)
+          probs[n] *= scales[counts.getParent(n)];
+      }
+    }
+  }
+
+  public void validate(int[][] histories, int[] words) {
+  }
+
+  public double getProbability(int[] histories, int word) {
+    double prob = uniform;
+    for (int k = 0; k < histories.length && histories[k] >= 0; k++) {
+      int history = histories[k];
+      if (counts.getHistoryCount(history) == 0.0)
+        continue;
+      int node = counts.getChild(history, word);
+      if (node >= 0 && counts.getCount(node) > 0)
+        prob = probs[node];
+      else
+        prob = alphas[history] * prob;
+    }
+    return prob;
+  }
+
+  public void write(ModelFile.Writer file) throws IOException {
+  }
+
+  public void read(ModelFile.Reader file) throws IOException {
+  }
+
+}
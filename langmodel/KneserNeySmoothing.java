@@ -0,0 +1,42 @@
+package cs224n.langmodel;
+
+/**
+ * Interpolated modified Kneser-Ney smoothing (Chen and Goodman).  Every
+ * order below the highest is counted by continuation counts, so a word's
+ * lower-order probability reflects how many distinct words it follows
+ * rather than how often it occurs, and each order has three discounts,
+ * for n-grams with (adjusted) count 1, 2 and 3 or more:
+ *
+ *   D1 = 1 - 2Y n2/n1,  D2 = 2 - 3Y n3/n2,  D3+ = 3 - 4Y n4/n3
+ *
+ * where Y = n1 / (n1 + 2 n2) and nr is the number of n-grams of the order
+ * with count r.  The continuation counts come from CountTrie.finish() and
+ * the count-of-counts from a single further pass, after which each query
+ * is one trie lookup per order.
+ */
+public class KneserNeySmoothing extends InterpolatedDiscountSmoothing {
+
+  private double[][] discounts;   // [n-gram length][min(count, 3)]
+
+  protected boolean isContinuation(int depth) {
+    return depth < order;
+  }
+
+  protected void estimateDiscounts() {
+    double[][] countOfCounts = getCountOfCounts(4);
+    discounts = new double[order + 1][4];
+    for (int depth = 1; depth <= order; depth++) {
+      double[] n = countOfCounts[depth];
+      double y = (n[1] > 0.0 ? n[1] / (n[1] + 2.0 * n[2]) : 0.5);
+      for (int r = 1; r <= 3; r++) {
+        double discount = (n[r] > 0.0 ? r - (r + 1) * y * n[r + 1] / n[r] : discounts[depth][r - 1]);
+        discounts[depth][r] = Math.min(r, Math.max(0.0, discount));
+      }
+    }
+  }
+
+  protected double discount(int depth, int count) {
+    return discounts[depth][Math.min(count, 3)];
+  }
+
+}
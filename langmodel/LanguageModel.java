@@ -1,10 +1,14 @@
 package cs224n.langmodel;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
 /**
  * Language models assign probabilities to sentences and generate sentences.
+ * Once a model is trained (or loaded), getSentenceProbability() and
+ * getWordProbability() must not modify it, so that several threads may
+ * score sentences against it at once.
  *
  * @author Dan Klein
  */
@@ -18,8 +22,53 @@ public interface LanguageModel {
 
   public double getWordProbability(List<String> sentence, int index);
 
+  /**
+   * Returns the natural log of getSentenceProbability(), computed without
+   * leaving log space, so it stays finite where the probability itself
+   * would underflow to zero.
+   */
+  public double getSentenceLogProbability(List<String> sentence);
+
+  /**
+   * Returns the natural log of getWordProbability().
+   */
+  public double getWordLogProbability(List<String> sentence, int index);
+
+  /**
+   * Returns getSentenceLogProbability() of each of a batch of sentences,
+   * such as the candidates of an n-best list.  Models may share work
+   * between the sentences and score large batches in parallel.
+   */
+  public double[] getSentenceLogProbabilities(List<List<String>> sentences);
+
+  /**
+   * Returns the state before the first word of a sentence, from which
+   * score() scores the sentence a word at a time.
+   */
+  public HistoryState beginSentence();
+
+  /**
+   * Returns the state after the given word in the given state, holding
+   * the natural log of the word's probability there.  Scoring each word
+   * of a sentence and then the stop token "</S>", from beginSentence(),
+   * gives log probabilities that sum to getSentenceLogProbability(), but
+   * each step looks up only the new word.
+   */
+  public HistoryState score(HistoryState state, String word);
+
   public double checkModel();
 
   public List<String> generateSentence();
 
+  /**
+   * Writes the trained model to a binary model file (see ModelFile).
+   */
+  public void save(String filename) throws IOException;
+
+  /**
+   * Replaces this model's state with a model previously written by save(),
+   * in place of training.
+   */
+  public void load(String filename) throws IOException;
+
 }
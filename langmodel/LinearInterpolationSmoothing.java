@@ -0,0 +1,87 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+
+import java.io.IOException;
+
+/**
+ * Jelinek-Mercer smoothing: a linear interpolation of the relative
+ * frequencies of every order and a uniform distribution over the
+ * vocabulary plus one unknown word.  Where a history was never seen, its
+ * order takes the relative frequency of the next lower order instead, so
+ * every component is a distribution and any weights summing to one give
+ * one too.
+ *
+ * The weights (see InterpolationWeights) depend on how often the full
+ * history was seen.  They start out at DEFAULT_UNIFORM_WEIGHT for the
+ * uniform distribution and an equal share of the rest for each order,
+ * and validate() re-estimates them by EM.
+ */
+public class LinearInterpolationSmoothing implements NGramSmoothing {
+
+  static final double DEFAULT_UNIFORM_WEIGHT = 0.1;
+
+  private CountTrie counts;
+  private int order;
+  private double uniform;
+  private InterpolationWeights weights;   // highest order first, uniform last
+
+  // -----------------------------------------------------------------------
+
+  public void estimate(CountTrie counts) {
+    this.counts = counts;
+    order = counts.getOrder();
+    uniform = 1.0 / (counts.getVocabularySize() + 1);
+    double[] lambdas = new double[order + 1];
+    for (int j = 0; j < order; j++) {
+      lambdas[j] = (1.0 - DEFAULT_UNIFORM_WEIGHT) / order;
+    }
+    lambdas[order] = DEFAULT_UNIFORM_WEIGHT;
+    weights = new InterpolationWeights(order + 1);
+    weights.setWeights(lambdas);
+  }
+
+  /**
+   * Fills in the probability of the word under each component, and
+   * returns the count of the full history.
+   */
+  private double getComponentProbabilities(int[] histories, int word, double[] probs) {
+    double prob = uniform;
+    double historyCount = 0.0;
+    for (int k = 0; k < order; k++) {
+      int history = (k < histories.length ? histories[k] : -1);
+      historyCount = (history >= 0 ? counts.getHistoryCount(history) : 0.0);
+      if (historyCount > 0.0) {
+        int node = counts.getChild(history, word);
+        prob = (node >= 0 ? counts.getCount(node) / historyCount : 0.0);
+      }
+      probs[order - 1 - k] = prob;
+    }
+    probs[order] = uniform;
+    return historyCount;
+  }
+
+  public void validate(int[][] histories, int[] words) {
+    InterpolationWeights.Events events = new InterpolationWeights.Events(order + 1);
+    double[] probs = new double[order + 1];
+    for (int i = 0; i < words.length; i++) {
+      events.add(getComponentProbabilities(histories[i], words[i], probs), probs);
+    }
+    weights.estimate(events);
+  }
+
+  public double getProbability(int[] histories, int word) {
+    double[] probs = new double[order + 1];
+    double historyCount = getComponentProbabilities(histories, word, probs);
+    return InterpolationWeights.interpolate(weights.getWeights(historyCount), probs);
+  }
+
+  public void write(ModelFile.Writer file) throws IOException {
+    weights.write(file);
+  }
+
+  public void read(ModelFile.Reader file) throws IOException {
+    weights = InterpolationWeights.read(file);
+  }
+
+}
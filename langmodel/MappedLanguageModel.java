@@ -0,0 +1,130 @@
+package cs224n.langmodel;
+
+import cs224n.util.MappedArray;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A HashedLanguageModel used in place from a model file written by
+ * HashedLanguageModel.save(), for models too large to keep on the heap.
+ * load() reads only the vocabulary, the unigrams and the codebooks; the
+ * hash tables of the higher orders (the keys, probability codes and
+ * backoff weights) stay in the file and are memory-mapped (see
+ * MappedArray).  The heap then holds a few megabytes however large the
+ * model, the garbage collector never scans the tables, and every JVM on
+ * the machine that maps the same file shares one copy of it in the page
+ * cache.  Scoring is the same as for the hashed model, at the cost of a
+ * bounds-checked buffer read per probe and of page faults until the
+ * tables are resident (see preload()).
+ *
+ * The model cannot be trained; to make one, freeze and hash a trained
+ * model, save it, and load the file here.
+ */
+public class MappedLanguageModel extends HashedLanguageModel {
+
+  private String filename;
+  private MappedArray[] keys;           // [level][slot], for levels 2..order
+  private MappedArray[] codes;          // [level][slot], bytes or chars by bits
+  private MappedArray[] logBackoffs;    // [level][slot], for levels 2..order-1
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Constructs an empty model, to load() a hashed model file into.
+   */
+  public MappedLanguageModel() {
+    keys = new MappedArray[0];
+  }
+
+  /**
+   * Constructs a model mapping the given hashed model file.
+   */
+  public MappedLanguageModel(String filename) throws IOException {
+    load(filename);
+  }
+
+  /**
+   * Maps a model written by HashedLanguageModel.save().  The file must
+   * not be changed while the model is in use.
+   */
+  public void load(String filename) throws IOException {
+    ModelFile.Reader file = readUnigrams(filename);
+    keys = new MappedArray[order + 1];
+    codes = new MappedArray[order + 1];
+    logBackoffs = new MappedArray[order];
+    for (int level = 2; level <= order; level++) {
+      keys[level] = file.mapLongs();
+      centers[level] = file.readFloats();
+      codes[level] = (bits <= 8 ? file.mapBytes() : file.mapChars());
+      if (level < order)
+        logBackoffs[level] = file.mapFloats();
+    }
+    this.filename = filename;
+  }
+
+  /**
+   * Copies the mapped file, which can be loaded either as a
+   * HashedLanguageModel or as a MappedLanguageModel.
+   */
+  public void save(String filename) throws IOException {
+    if (this.filename == null)
+      throw new IllegalStateException("No model file is mapped");
+    Files.copy(Paths.get(this.filename), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Returns the number of bytes of the file mapped.
+   */
+  public long getMappedSize() {
+    long size = 0;
+    for (int level = 2; level < keys.length; level++) {
+      size += keys[level].byteSize() + codes[level].byteSize();
+      if (level < order)
+        size += logBackoffs[level].byteSize();
+    }
+    return size;
+  }
+
+  /**
+   * Reads the mapped tables into memory now, so that scoring does not
+   * wait on page faults.
+   */
+  public void preload() {
+    for (int level = 2; level < keys.length; level++) {
+      keys[level].load();
+      codes[level].load();
+      if (level < order)
+        logBackoffs[level].load();
+    }
+  }
+
+  // -----------------------------------------------------------------------
+
+  protected int find(int level, long key) {
+    MappedArray levelKeys = keys[level];
+    int capacity = levelKeys.length();
+    if (capacity == 0)
+      return -1;
+    int slot = getSlot(key, capacity);
+    long slotKey;
+    while ((slotKey = levelKeys.getLong(slot)) != key) {
+      if (slotKey == EMPTY)
+        return -1;
+      slot = (slot + 1 == capacity ? 0 : slot + 1);
+    }
+    return slot;
+  }
+
+  protected float getLogProb(int level, int slot) {
+    int code = (bits <= 8 ? codes[level].getByte(slot) & 0xff : codes[level].getChar(slot));
+    return centers[level][code];
+  }
+
+  protected float getLogBackoff(int level, int slot) {
+    return logBackoffs[level].getFloat(slot);
+  }
+
+}
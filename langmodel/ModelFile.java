@@ -0,0 +1,392 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+import cs224n.util.Index;
+import cs224n.util.MappedArray;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * The binary on-disk format for trained language models.  A model file
+ * starts with a header naming the model class, followed by the vocabulary
+ * (every word the model knows, each once), followed by whatever sections
+ * the model writes: count tries and n-gram tables stored as word ids,
+ * and scalar parameters.
+ *
+ * Models write their state through a ModelFile.Writer and read it back, in
+ * the same order, through a ModelFile.Reader, which memory-maps the file
+ * rather than streaming it, a window of 1 GB at a time, so files may
+ * exceed the 2 GB a single mapping can hold.  Large arrays can also be
+ * left in the file and used in place (see Reader.mapLongs()).
+ */
+public class ModelFile {
+
+  private static final long MAGIC = 0x43533232344e4c4dL;   // "CS224NLM"
+  private static final int VERSION = 3;
+
+  // =======================================================================
+
+  /**
+   * Writes a model file.  Sections are buffered in a temporary file next
+   * to it while the vocabulary is collected, and the whole file is written
+   * on close().
+   */
+  public static class Writer {
+
+    private String filename;
+    private String modelClass;
+    private Index<String> words;
+    private File sections;
+    private DataOutputStream out;
+
+    public Writer(String filename, LanguageModel model) throws IOException {
+      this.filename = filename;
+      this.modelClass = model.getClass().getName();
+      words = new Index<String>();
+      sections = File.createTempFile("model", ".sections",
+                                     new File(filename).getAbsoluteFile().getParentFile());
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sections)));
+    }
+
+    private int id(String word) {
+      words.add(word);
+      return words.indexOf(word);
+    }
+
+    public void writeDouble(double value) throws IOException {
+      out.writeDouble(value);
+    }
+
+    public void writeInt(int value) throws IOException {
+      out.writeInt(value);
+    }
+
+    public void writeString(String value) throws IOException {
+      writeString(out, value);
+    }
+
+    public void writeInts(int[] values) throws IOException {
+      out.writeInt(values.length);
+      for (int value : values) {
+        out.writeInt(value);
+      }
+    }
+
+    public void writeFloats(float[] values) throws IOException {
+      out.writeInt(values.length);
+      for (float value : values) {
+        out.writeFloat(value);
+      }
+    }
+
+    public void writeBytes(byte[] values) throws IOException {
+      out.writeInt(values.length);
+      out.write(values);
+    }
+
+    public void writeLongs(long[] values) throws IOException {
+      out.writeInt(values.length);
+      for (long value : values) {
+        out.writeLong(value);
+      }
+    }
+
+    public void writeChars(char[] values) throws IOException {
+      out.writeInt(values.length);
+      for (char value : values) {
+        out.writeChar(value);
+      }
+    }
+
+    /**
+     * Writes a list of words, in order.
+     */
+    public void writeWords(List<String> list) throws IOException {
+      out.writeInt(list.size());
+      for (String word : list) {
+        out.writeInt(id(word));
+      }
+    }
+
+    /**
+     * Writes the nodes of a count trie in order of creation, so that each
+     * parent comes before its children.
+     */
+    public void writeCountTrie(CountTrie trie) throws IOException {
+      Index<String> trieWords = trie.getIndex();
+      int[] ids = new int[trieWords.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = id(trieWords.get(i));
+      }
+      out.writeInt(trie.getOrder());
+      out.writeInt(trie.size());
+      for (int n = 1; n < trie.size(); n++) {
+        out.writeInt(trie.getParent(n));
+        out.writeInt(ids[trie.getWord(n)]);
+        out.writeInt(trie.getCount(n));
+      }
+    }
+
+    private static void writeString(DataOutputStream file, String string) throws IOException {
+      byte[] bytes = string.getBytes("UTF-8");
+      file.writeInt(bytes.length);
+      file.write(bytes);
+    }
+
+    /**
+     * Writes the header, the vocabulary and all buffered sections.
+     */
+    public void close() throws IOException {
+      out.close();
+      try {
+        DataOutputStream file =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+          file.writeLong(MAGIC);
+          file.writeInt(VERSION);
+          writeString(file, modelClass);
+          file.writeInt(words.size());
+          for (String word : words) {
+            writeString(file, word);
+          }
+          Files.copy(sections.toPath(), file);
+        } finally {
+          file.close();
+        }
+      } finally {
+        sections.delete();
+      }
+    }
+  }
+
+  // =======================================================================
+
+  /**
+   * Reads a model file written by a ModelFile.Writer.
+   */
+  public static class Reader {
+
+    private static final long WINDOW = 1L << 30;
+
+    private String filename;
+    private long fileSize;
+    private long base;   // the offset in the file of the window
+    private MappedByteBuffer in;
+    private String[] words;
+
+    public Reader(String filename, LanguageModel model) throws IOException {
+      this(filename, model.getClass());
+    }
+
+    /**
+     * Opens a model file written by a model of the given class.
+     */
+    public Reader(String filename, Class<?> modelClass) throws IOException {
+      this.filename = filename;
+      in = map(0);
+      if (in.remaining() < 12 || in.getLong() != MAGIC)
+        throw new IOException(filename + " is not a model file");
+      int version = in.getInt();
+      if (version != VERSION)
+        throw new IOException(filename + " has unsupported version " + version);
+      String fileClass = readString();
+      if (!fileClass.equals(modelClass.getName()))
+        throw new IOException(filename + " holds a " + fileClass + ", not a " +
+                              modelClass.getName());
+      words = new String[getInt()];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = readString();
+      }
+    }
+
+    /**
+     * Maps the window of the file starting at the given offset.
+     */
+    private MappedByteBuffer map(long offset) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(filename, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        fileSize = channel.size();
+        base = Math.min(offset, fileSize);
+        return channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(fileSize - base, WINDOW));
+      } finally {
+        file.close();
+      }
+    }
+
+    /**
+     * Moves the window up to the current position if fewer than the given
+     * number of bytes are left in it and more are left in the file.
+     */
+    private void ensure(long bytes) throws IOException {
+      if (in.remaining() < bytes && base + in.limit() < fileSize)
+        in = map(base + in.position());
+    }
+
+    /**
+     * Returns how many of the given number of values of the given size
+     * can be read from the window, moving it if need be.
+     */
+    private int available(int count, int size) throws IOException {
+      ensure((long) count * size);
+      int available = Math.min(count, in.remaining() / size);
+      if (available == 0 && count > 0)
+        throw new EOFException(filename + " is truncated");
+      return available;
+    }
+
+    private void skip(long bytes) throws IOException {
+      if (bytes <= in.remaining())
+        in.position(in.position() + (int) bytes);
+      else
+        in = map(base + in.position() + bytes);
+    }
+
+    private int getInt() throws IOException {
+      ensure(4);
+      return in.getInt();
+    }
+
+    private double getDouble() throws IOException {
+      ensure(8);
+      return in.getDouble();
+    }
+
+    public String readString() throws IOException {
+      return new String(readBytes(), "UTF-8");
+    }
+
+    public double readDouble() throws IOException {
+      return getDouble();
+    }
+
+    public int readInt() throws IOException {
+      return getInt();
+    }
+
+    public int[] readInts() throws IOException {
+      int[] values = new int[getInt()];
+      for (int i = 0; i < values.length; ) {
+        int n = available(values.length - i, 4);
+        in.asIntBuffer().get(values, i, n);
+        in.position(in.position() + 4 * n);
+        i += n;
+      }
+      return values;
+    }
+
+    public float[] readFloats() throws IOException {
+      float[] values = new float[getInt()];
+      for (int i = 0; i < values.length; ) {
+        int n = available(values.length - i, 4);
+        in.asFloatBuffer().get(values, i, n);
+        in.position(in.position() + 4 * n);
+        i += n;
+      }
+      return values;
+    }
+
+    public byte[] readBytes() throws IOException {
+      byte[] values = new byte[getInt()];
+      for (int i = 0; i < values.length; ) {
+        int n = available(values.length - i, 1);
+        in.get(values, i, n);
+        i += n;
+      }
+      return values;
+    }
+
+    public long[] readLongs() throws IOException {
+      long[] values = new long[getInt()];
+      for (int i = 0; i < values.length; ) {
+        int n = available(values.length - i, 8);
+        in.asLongBuffer().get(values, i, n);
+        in.position(in.position() + 8 * n);
+        i += n;
+      }
+      return values;
+    }
+
+    public char[] readChars() throws IOException {
+      char[] values = new char[getInt()];
+      for (int i = 0; i < values.length; ) {
+        int n = available(values.length - i, 2);
+        in.asCharBuffer().get(values, i, n);
+        in.position(in.position() + 2 * n);
+        i += n;
+      }
+      return values;
+    }
+
+    /**
+     * Maps an array written by writeLongs() in place, off the heap, rather
+     * than reading it (see MappedArray).
+     */
+    public MappedArray mapLongs() throws IOException {
+      return mapArray(8);
+    }
+
+    /**
+     * Maps an array written by writeFloats() in place.
+     */
+    public MappedArray mapFloats() throws IOException {
+      return mapArray(4);
+    }
+
+    /**
+     * Maps an array written by writeChars() in place.
+     */
+    public MappedArray mapChars() throws IOException {
+      return mapArray(2);
+    }
+
+    /**
+     * Maps an array written by writeBytes() in place.
+     */
+    public MappedArray mapBytes() throws IOException {
+      return mapArray(1);
+    }
+
+    private MappedArray mapArray(int size) throws IOException {
+      int length = getInt();
+      if (base + in.position() + (long) length * size > fileSize)
+        throw new EOFException(filename + " is truncated");
+      MappedArray values = new MappedArray(filename, base + in.position(), length, size);
+      skip((long) length * size);
+      return values;
+    }
+
+    /**
+     * Reads a list of words written by writeWords() into an Index.
+     */
+    public Index<String> readWords() throws IOException {
+      Index<String> list = new Index<String>();
+      int size = getInt();
+      for (int i = 0; i < size; i++) {
+        list.add(words[getInt()]);
+      }
+      return list;
+    }
+
+    /**
+     * Reads a count trie written by writeCountTrie(), and finishes it.
+     */
+    public CountTrie readCountTrie() throws IOException {
+      CountTrie trie = new CountTrie(getInt());
+      int[] nodes = new int[getInt()];
+      for (int n = 1; n < nodes.length; n++) {
+        int parent = nodes[getInt()];
+        nodes[n] = trie.getOrAddChild(parent, words[getInt()]);
+        trie.incrementCount(nodes[n], getInt());
+      }
+      trie.finish();
+      return trie;
+    }
+
+  }
+
+}
@@ -0,0 +1,29 @@
+package cs224n.langmodel;
+
+import java.util.*;
+
+/**
+ * The sentence padding shared by the n-gram models: each sentence is
+ * padded with order - 1 start tokens and a stop token.  The start tokens
+ * serve only as history.  The counts themselves are kept in a CountTrie
+ * (see NGramLanguageModel).
+ */
+public class NGramCounts {
+
+  static final String START = "<S>";
+  static final String STOP = "</S>";
+
+  /**
+   * Pads a sentence with order - 1 start tokens and a stop token.
+   */
+  public static List<String> pad(List<String> sentence, int order) {
+    List<String> stoppedSentence = new ArrayList<String>(sentence.size() + order);
+    for (int i = 1; i < order; i++) {
+      stoppedSentence.add(START);
+    }
+    stoppedSentence.addAll(sentence);
+    stoppedSentence.add(STOP);
+    return stoppedSentence;
+  }
+
+}
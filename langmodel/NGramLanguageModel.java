@@ -0,0 +1,383 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+import cs224n.util.Counter;
+import cs224n.util.Parallel;
+import cs224n.util.Sampler;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An n-gram language model of any order, with a pluggable smoothing
+ * method (see NGramSmoothing).  All n-grams up to the order are counted
+ * into a single CountTrie, so higher orders cost only more trie nodes.
+ * Each sentence is padded with order - 1 start tokens and a stop token;
+ * the start tokens serve only as history.
+ *
+ * The no-argument constructor gives a Kneser-Ney trigram model.  From
+ * LanguageModelTester, -order and -smoothing choose another, e.g.
+ *
+ *   -model cs224n.langmodel.NGramLanguageModel -order 5 -smoothing Katz
+ *
+ * where the smoothing is named by a class implementing NGramSmoothing,
+ * with the package and the "Smoothing" suffix optional.
+ */
+public class NGramLanguageModel implements LanguageModel {
+
+  public static final int DEFAULT_ORDER = 3;
+
+  private int order;
+  private NGramSmoothing smoothing;
+  private CountTrie counts;
+  private Map<Integer, Sampler<String>> samplers;   // built lazily by generateWord()
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Constructs a new, empty Kneser-Ney trigram model.
+   */
+  public NGramLanguageModel() {
+    this(DEFAULT_ORDER, new KneserNeySmoothing());
+  }
+
+  /**
+   * Constructs a new, empty model of the given order and smoothing.
+   */
+  public NGramLanguageModel(int order, NGramSmoothing smoothing) {
+    this.order = order;
+    this.smoothing = smoothing;
+    counts = new CountTrie(order);
+    counts.finish();
+    smoothing.estimate(counts);
+    samplers = new ConcurrentHashMap<Integer, Sampler<String>>();
+  }
+
+  /**
+   * Constructs a new, empty model of the given order, with the smoothing
+   * named as for newSmoothing().
+   */
+  public NGramLanguageModel(int order, String smoothing) {
+    this(order, newSmoothing(smoothing));
+  }
+
+  /**
+   * Constructs a model of the given order and smoothing from a collection
+   * of sentences.
+   */
+  public NGramLanguageModel(int order, NGramSmoothing smoothing, Collection<List<String>> sentences) {
+    this(order, smoothing);
+    train(sentences);
+  }
+
+  /**
+   * Creates a smoothing method by class name.  Names without a package
+   * are looked up in cs224n.langmodel, and "Smoothing" is appended if
+   * missing, so "KneserNey" names cs224n.langmodel.KneserNeySmoothing.
+   */
+  public static NGramSmoothing newSmoothing(String name) {
+    if (name.indexOf('.') < 0)
+      name = "cs224n.langmodel." + name;
+    if (!name.endsWith("Smoothing"))
+      name = name + "Smoothing";
+    try {
+      return (NGramSmoothing) Class.forName(name).newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unknown smoothing: " + name, e);
+    }
+  }
+
+  public int getOrder() {
+    return order;
+  }
+
+  public NGramSmoothing getSmoothing() {
+    return smoothing;
+  }
+
+  public CountTrie getCounts() {
+    return counts;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Counts the n-grams of a collection of sentences, in parallel, and
+   * estimates the smoothing.
+   */
+  public void train(Collection<List<String>> sentences) {
+    counts = Parallel.accumulate(sentences, new Parallel.Accumulator<List<String>, CountTrie>() {
+      public CountTrie newResult() {
+        return new CountTrie(order);
+      }
+      public void accumulate(CountTrie trie, List<String> sentence) {
+        trie.add(NGramCounts.pad(sentence, order), order - 1);
+      }
+      public void merge(CountTrie trie, CountTrie chunkTrie) {
+        trie.incrementAll(chunkTrie);
+      }
+    });
+    counts.finish();
+    smoothing.estimate(counts);
+    samplers.clear();
+  }
+
+  /**
+   * Passes every held-out event, with sentences padded as for scoring, to
+   * the smoothing to tune.
+   */
+  public void validate(Collection<List<String>> validationData) {
+    List<int[]> histories = new ArrayList<int[]>();
+    List<Integer> words = new ArrayList<Integer>();
+    for (List<String> sentence : validationData) {
+      int[] ids = getWordIds(NGramCounts.pad(sentence, order));
+      for (int index = order - 1; index < ids.length; index++) {
+        histories.add(getHistories(ids, index));
+        words.add(ids[index]);
+      }
+    }
+    int[] wordArray = new int[words.size()];
+    for (int i = 0; i < wordArray.length; i++) {
+      wordArray[i] = words.get(i);
+    }
+    smoothing.validate(histories.toArray(new int[histories.size()][]), wordArray);
+  }
+
+  /**
+   * Writes the counts and the smoothing parameters to a binary model file.
+   */
+  public void save(String filename) throws IOException {
+    ModelFile.Writer file = new ModelFile.Writer(filename, this);
+    file.writeString(smoothing.getClass().getName());
+    file.writeCountTrie(counts);
+    smoothing.write(file);
+    file.close();
+  }
+
+  /**
+   * Loads counts and smoothing written by save(), replacing training.
+   */
+  public void load(String filename) throws IOException {
+    ModelFile.Reader file = new ModelFile.Reader(filename, this);
+    smoothing = newSmoothing(file.readString());
+    counts = file.readCountTrie();
+    order = counts.getOrder();
+    smoothing.estimate(counts);
+    smoothing.read(file);
+    samplers.clear();
+  }
+
+  /**
+   * Returns a read-only copy of this model in compact backoff form.
+   */
+  public FrozenLanguageModel freeze() {
+    return freeze(null);
+  }
+
+  /**
+   * Returns a read-only copy of this model in compact backoff form
+   * without the n-grams of each order k >= 2 seen fewer than minCounts[k]
+   * times, whose mass goes to the backoff weights of their histories.
+   */
+  public FrozenLanguageModel freeze(int[] minCounts) {
+    return new FrozenLanguageModel(counts, smoothing, minCounts);
+  }
+
+  // -----------------------------------------------------------------------
+
+  private int[] getWordIds(List<String> sentence) {
+    int[] ids = new int[sentence.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = counts.getWordId(sentence.get(i));
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the trie nodes of the histories of the word at the given
+   * index, by length, as NGramSmoothing expects them.
+   */
+  private int[] getHistories(int[] ids, int index) {
+    int[] histories = new int[order];
+    for (int k = 1; k < order; k++) {
+      histories[k] = (index - k < 0 || histories[k - 1] < 0 ? -1 : counts.getNode(ids, index - k, index));
+    }
+    return histories;
+  }
+
+  /**
+   * Returns the probability, according to the model, of the word specified
+   * by the argument sentence and index.  Smoothing is used, so that all
+   * words get positive probability, even if they have not been seen
+   * before.
+   */
+  public double getWordProbability(List<String> sentence, int index) {
+    int from = Math.max(0, index - order + 1);
+    int[] ids = getWordIds(sentence.subList(from, index + 1));
+    return smoothing.getProbability(getHistories(ids, index - from), ids[index - from]);
+  }
+
+  /**
+   * Returns the natural log of the probability of the word specified by
+   * the argument sentence and index.
+   */
+  public double getWordLogProbability(List<String> sentence, int index) {
+    return Math.log(getWordProbability(sentence, index));
+  }
+
+  /**
+   * Returns the probability, according to the model, of the specified
+   * sentence.  This is the product of the probabilities of each word in
+   * the sentence (including a final stop token).
+   */
+  public double getSentenceProbability(List<String> sentence) {
+    return Math.exp(getSentenceLogProbability(sentence));
+  }
+
+  /**
+   * Returns the natural log of the probability of the specified sentence,
+   * summed word by word, so that long sentences do not underflow.  The
+   * words are looked up in the vocabulary once.
+   */
+  public double getSentenceLogProbability(List<String> sentence) {
+    int[] ids = getWordIds(NGramCounts.pad(sentence, order));
+    double logProb = 0.0;
+    for (int index = order - 1; index < ids.length; index++) {
+      logProb += Math.log(smoothing.getProbability(getHistories(ids, index), ids[index]));
+    }
+    return logProb;
+  }
+
+  /**
+   * Returns the natural log of the probability of each of a batch of
+   * sentences, sharing word lookups and n-gram scores between them (see
+   * BatchScorer).
+   */
+  public double[] getSentenceLogProbabilities(List<List<String>> sentences) {
+    return new BatchScorer(order) {
+      int getWordId(String word) {
+        return counts.getWordId(word);
+      }
+      double getLogProbability(int[] ids, int index) {
+        return Math.log(smoothing.getProbability(getHistories(ids, index), ids[index]));
+      }
+    }.score(sentences);
+  }
+
+  /**
+   * Returns the state before the first word of a sentence: the trie
+   * nodes of its histories by length, as getHistories() returns them,
+   * after the start tokens.
+   */
+  public HistoryState beginSentence() {
+    int[] ids = getWordIds(NGramCounts.pad(new ArrayList<String>(), order));
+    return new HistoryState.Ids(0.0, getHistories(ids, order - 1));
+  }
+
+  /**
+   * Scores a word from the cached history nodes of the state.  The
+   * histories after the word are the children of the shorter histories
+   * before it, so each step costs one child lookup per order.
+   */
+  public HistoryState score(HistoryState state, String word) {
+    int[] histories = ((HistoryState.Ids) state).ids;
+    int id = counts.getWordId(word);
+    double logProb = Math.log(smoothing.getProbability(histories, id));
+    int[] next = new int[order];
+    for (int k = 1; k < order; k++) {
+      next[k] = counts.getChild(histories[k - 1], id);
+    }
+    return new HistoryState.Ids(logProb, next);
+  }
+
+  /**
+   * Checks that the distributions after up to 100 random histories of the
+   * highest order sum to one over the vocabulary plus the unknown word,
+   * and returns the sum that differs from one the most.
+   */
+  public double checkModel() {
+    Random generator = new Random();
+    double highestVarianceSum = 1.0; // Keep track of which sum differs from 1.0 the most
+
+    List<Integer> vocabulary = new ArrayList<Integer>();
+    for (int node : counts.getChildren(counts.root())) {
+      if (counts.getCount(node) > 0)
+        vocabulary.add(counts.getWord(node));
+    }
+    List<Integer> candidates = new ArrayList<Integer>();
+    for (int node = 0; node < counts.size(); node++) {
+      if (counts.getDepth(node) == order - 1 && counts.getHistoryCount(node) > 0.0)
+        candidates.add(node);
+    }
+    if (candidates.isEmpty())
+      return highestVarianceSum;
+    for (int i = 0; i < 100; i++) {
+      int[] histories = new int[order];
+      histories[order - 1] = candidates.get(generator.nextInt(candidates.size()));
+      for (int k = order - 1; k > 0; k--) {
+        histories[k - 1] = counts.getSuffix(histories[k]);
+      }
+      double sum = smoothing.getProbability(histories, -1);
+      for (int word : vocabulary) {
+        sum += smoothing.getProbability(histories, word);
+      }
+      if (Math.abs(sum - 1.0) > Math.abs(highestVarianceSum - 1.0))
+        highestVarianceSum = sum;
+    }
+    return highestVarianceSum;
+  }
+
+  /**
+   * Returns the sampler over the words seen after the given history node,
+   * building and caching it on first use.
+   */
+  private Sampler<String> getSampler(int history) {
+    Sampler<String> sampler = samplers.get(history);
+    if (sampler == null) {
+      Counter<String> counter = new Counter<String>();
+      for (int node : counts.getChildren(history)) {
+        if (counts.getCount(node) > 0)
+          counter.setCount(counts.getIndex().get(counts.getWord(node)), counts.getCount(node));
+      }
+      sampler = new Sampler<String>(counter);
+      samplers.put(history, sampler);
+    }
+    return sampler;
+  }
+
+  /**
+   * Returns a random word following the given words, sampled from the
+   * words seen after the longest of their suffixes that was seen as a
+   * history.
+   */
+  public String generateWord(List<String> words) {
+    int[] ids = getWordIds(words);
+    int[] histories = getHistories(ids, ids.length);
+    int history = counts.root();
+    for (int k = order - 1; k > 0; k--) {
+      if (histories[k] >= 0 && counts.getHistoryCount(histories[k]) > 0.0) {
+        history = histories[k];
+        break;
+      }
+    }
+    String word = getSampler(history).sample();
+    return (word == null ? "*UNKNOWN*" : word);
+  }
+
+  /**
+   * Returns a random sentence sampled according to the model.  We generate
+   * words until the stop token is generated, and return the concatenation.
+   */
+  public List<String> generateSentence() {
+    List<String> words = NGramCounts.pad(new ArrayList<String>(), order);
+    words.remove(words.size() - 1);
+    String word = generateWord(words);
+    while (!word.equals(NGramCounts.STOP)) {
+      words.add(word);
+      word = generateWord(words.subList(Math.max(0, words.size() - order + 1), words.size()));
+    }
+    return new ArrayList<String>(words.subList(order - 1, words.size()));
+  }
+
+}
@@ -0,0 +1,48 @@
+package cs224n.langmodel;
+
+import cs224n.util.CountTrie;
+
+import java.io.IOException;
+
+/**
+ * A smoothing method for NGramLanguageModel.  A smoothing method turns the
+ * counts in a CountTrie into conditional probabilities p(word | history)
+ * that sum to one over the vocabulary plus a single unknown word.
+ *
+ * A history is passed as the array of its trie nodes by length:
+ * histories[k] is the node of the last k words of the history (so
+ * histories[0] is the root), or -1 if those words were never seen
+ * together, in which case every longer entry is -1 too.  The word is a
+ * word id of the trie, or -1 for an unknown word.
+ */
+public interface NGramSmoothing {
+
+  /**
+   * Precomputes whatever the method needs from the counts.  Called once
+   * the trie is finished, after training and after loading.
+   */
+  public void estimate(CountTrie counts);
+
+  /**
+   * Tunes free parameters on held-out events, given as the histories and
+   * word of each event.  Methods with nothing to tune ignore it.
+   */
+  public void validate(int[][] histories, int[] words);
+
+  /**
+   * Returns p(word | history).  Must not modify the smoothing, so that
+   * several threads may call it at once.
+   */
+  public double getProbability(int[] histories, int word);
+
+  /**
+   * Writes any parameters that estimate() does not recompute.
+   */
+  public void write(ModelFile.Writer file) throws IOException;
+
+  /**
+   * Reads the parameters written by write(), after estimate().
+   */
+  public void read(ModelFile.Reader file) throws IOException;
+
+}
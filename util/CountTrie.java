@@ -0,0 +1,457 @@
+package cs224n.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts of all n-grams up to a fixed order, stored as a trie over integer
+ * word ids.  Each node stands for one n-gram (its path from the root) and
+ * is numbered in order of creation, so a node's parent always has a
+ * smaller number.  Children are found through a single open-addressing
+ * hash table keyed by the packed (parent, word) pair, and every per-node
+ * statistic lives in a parallel primitive array, so no objects are created
+ * per n-gram and any order costs the same few arrays.
+ *
+ * Besides the count of each n-gram the trie keeps, for every node used as
+ * a history, the total count of its children and how many of them were
+ * seen.  Once counting is done, finish() adds the statistics needed for
+ * Kneser-Ney smoothing: suffix links (the node of the n-gram without its
+ * first word), continuation counts (how many distinct words precede an
+ * n-gram) and child lists.  Lookups never modify the trie, so after
+ * finish() it may be read from several threads at once.
+ */
+public class CountTrie {
+
+  private static final long EMPTY = -1L;
+  private static final double MAX_LOAD = 0.7;
+
+  private int order;
+  private Index<String> words;
+
+  // hash table from packed (parent, word) to child node
+  private long[] keys;
+  private int[] slots;
+  private int threshold;
+
+  // per node
+  private int size;
+  private int[] parents;
+  private int[] wordIds;
+  private byte[] depths;
+  private int[] counts;
+  private double[] historyCounts;   // total count of the node's children
+  private int[] numChildren;        // children with a positive count
+
+  // built by finish()
+  private int[] suffixes;
+  private int[] continuationCounts;
+  private double[] continuationHistoryCounts;
+  private int[] numContinuationChildren;
+  private int[] childOffsets;
+  private int[] children;
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Constructs an empty trie for n-grams up to the given order.
+   */
+  public CountTrie(int order) {
+    if (order < 1 || order > Byte.MAX_VALUE)
+      throw new IllegalArgumentException("Unsupported order: " + order);
+    this.order = order;
+    words = new Index<String>();
+    keys = new long[0];
+    rehash(64);
+    parents = new int[64];
+    wordIds = new int[64];
+    depths = new byte[64];
+    counts = new int[64];
+    historyCounts = new double[64];
+    numChildren = new int[64];
+    parents[0] = -1;
+    wordIds[0] = -1;
+    size = 1;   // the root, for the empty n-gram
+  }
+
+  private static long pack(int node, int word) {
+    return ((long) node << 32) | word;
+  }
+
+  private int findSlot(long key) {
+    int mask = keys.length - 1;
+    int slot = LongCounter.hash(key) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldSlots = slots;
+    keys = new long[capacity];
+    slots = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    threshold = (int) (capacity * MAX_LOAD);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = findSlot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        slots[slot] = oldSlots[i];
+      }
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= parents.length)
+      return;
+    capacity = Math.max(capacity, 2 * parents.length);
+    parents = Arrays.copyOf(parents, capacity);
+    wordIds = Arrays.copyOf(wordIds, capacity);
+    depths = Arrays.copyOf(depths, capacity);
+    counts = Arrays.copyOf(counts, capacity);
+    historyCounts = Arrays.copyOf(historyCounts, capacity);
+    numChildren = Arrays.copyOf(numChildren, capacity);
+  }
+
+  /**
+   * Returns the id of the given word, adding it to the vocabulary if it
+   * is new.
+   */
+  private int ensureId(String word) {
+    int id = words.indexOf(word);
+    if (id < 0) {
+      words.add(word);
+      id = words.size() - 1;
+    }
+    return id;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the child of a node for the given word, creating it (with a
+   * count of zero) if necessary.
+   */
+  public int getOrAddChild(int node, String word) {
+    return getOrAddChild(node, ensureId(word));
+  }
+
+  private int getOrAddChild(int node, int word) {
+    long key = pack(node, word);
+    int slot = findSlot(key);
+    if (keys[slot] == key)
+      return slots[slot];
+    if (depths[node] == order)
+      throw new IllegalArgumentException("N-gram longer than order " + order);
+    if (size >= threshold) {
+      rehash(keys.length * 2);
+      slot = findSlot(key);
+    }
+    ensureCapacity(size + 1);
+    int child = size++;
+    keys[slot] = key;
+    slots[slot] = child;
+    parents[child] = node;
+    wordIds[child] = word;
+    depths[child] = (byte) (depths[node] + 1);
+    suffixes = null;
+    return child;
+  }
+
+  /**
+   * Adds to the count of a node, keeping the statistics of its parent up
+   * to date.
+   */
+  public void incrementCount(int node, int count) {
+    if (count == 0)
+      return;
+    int parent = parents[node];
+    if (counts[node] == 0)
+      numChildren[parent]++;
+    counts[node] += count;
+    historyCounts[parent] += count;
+  }
+
+  /**
+   * Counts every n-gram (of every order up to the trie's) that ends at a
+   * position from start on.  Earlier words serve only as history, so for
+   * a sentence padded with order - 1 start tokens, start = order - 1
+   * counts each real word and the stop token once per order.
+   */
+  public void add(List<String> sentence, int start) {
+    int[] ids = new int[sentence.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = ensureId(sentence.get(i));
+    }
+    for (int i = start; i < ids.length; i++) {
+      for (int k = Math.min(order, i + 1); k >= 1; k--) {
+        int node = 0;
+        for (int j = i - k + 1; j <= i; j++) {
+          node = getOrAddChild(node, ids[j]);
+        }
+        incrementCount(node, 1);
+      }
+    }
+  }
+
+  /**
+   * Adds every count of another trie into this one.  The other trie may
+   * have a different vocabulary.  Nodes are visited in order of creation,
+   * so each parent is mapped before its children.
+   */
+  public void incrementAll(CountTrie other) {
+    int[] ids = new int[other.words.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = ensureId(other.words.get(i));
+    }
+    int[] nodes = new int[other.size];
+    for (int n = 1; n < other.size; n++) {
+      nodes[n] = getOrAddChild(nodes[other.parents[n]], ids[other.wordIds[n]]);
+      incrementCount(nodes[n], other.counts[n]);
+    }
+  }
+
+  /**
+   * Computes suffix links, continuation counts and child lists.  Call it
+   * once counting is done; adding n-grams afterwards discards them.
+   *
+   * The continuation statistics come from a single pass over the nodes in
+   * order of creation: each counted n-gram adds one to the continuation
+   * count of its suffix, and that same step updates the suffix's parent.
+   */
+  public void finish() {
+    int[] suffix = new int[size];
+    int[] continuation = new int[size];
+    double[] continuationHistory = new double[size];
+    int[] numContinuation = new int[size];
+    int[] offsets = new int[size + 1];
+    suffix[0] = -1;
+    for (int n = 1; n < size; n++) {
+      // the suffix of a counted n-gram ends at the same position, so it
+      // was counted too; the suffix of a parent was created before n
+      suffix[n] = (depths[n] == 1 ? 0 : getChild(suffix[parents[n]], wordIds[n]));
+      offsets[parents[n] + 1]++;
+      int s = suffix[n];
+      if (depths[n] >= 2 && counts[n] > 0 && s >= 0) {
+        if (continuation[s]++ == 0)
+          numContinuation[parents[s]]++;
+        continuationHistory[parents[s]]++;
+      }
+    }
+    for (int n = 0; n < size; n++) {
+      offsets[n + 1] += offsets[n];
+    }
+    int[] next = Arrays.copyOf(offsets, size);
+    int[] childList = new int[size - 1];
+    for (int n = 1; n < size; n++) {
+      childList[next[parents[n]]++] = n;
+    }
+    continuationCounts = continuation;
+    continuationHistoryCounts = continuationHistory;
+    numContinuationChildren = numContinuation;
+    childOffsets = offsets;
+    children = childList;
+    suffixes = suffix;
+  }
+
+  private void checkFinished() {
+    if (suffixes == null)
+      throw new IllegalStateException("CountTrie.finish() has not been called");
+  }
+
+  // -----------------------------------------------------------------------
+
+  public int getOrder() {
+    return order;
+  }
+
+  /**
+   * The vocabulary of the trie.  Word ids index into this list.
+   */
+  public Index<String> getIndex() {
+    return words;
+  }
+
+  /**
+   * Returns the id of a word, or -1 if it was never added.
+   */
+  public int getWordId(String word) {
+    return words.indexOf(word);
+  }
+
+  /**
+   * The number of nodes, including the root.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The root node, standing for the empty n-gram.
+   */
+  public int root() {
+    return 0;
+  }
+
+  /**
+   * Returns the child of a node for the given word id, or -1 if there is
+   * none.
+   */
+  public int getChild(int node, int word) {
+    if (node < 0 || word < 0)
+      return -1;
+    long key = pack(node, word);
+    int slot = findSlot(key);
+    return (keys[slot] == key ? slots[slot] : -1);
+  }
+
+  /**
+   * Returns the node for words[from, to), or -1 if there is none.
+   */
+  public int getNode(int[] words, int from, int to) {
+    int node = 0;
+    for (int i = from; i < to && node >= 0; i++) {
+      node = getChild(node, words[i]);
+    }
+    return node;
+  }
+
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  public int getWord(int node) {
+    return wordIds[node];
+  }
+
+  /**
+   * The length of the node's n-gram.
+   */
+  public int getDepth(int node) {
+    return depths[node];
+  }
+
+  public int getCount(int node) {
+    return counts[node];
+  }
+
+  /**
+   * The total count of the n-grams extending the node by one word: the
+   * number of times its n-gram was seen as a history.
+   */
+  public double getHistoryCount(int node) {
+    return historyCounts[node];
+  }
+
+  /**
+   * The number of distinct words seen after the node's n-gram.
+   */
+  public int getNumChildren(int node) {
+    return numChildren[node];
+  }
+
+  /**
+   * The node of the n-gram without its first word (the root for
+   * unigrams).
+   */
+  public int getSuffix(int node) {
+    checkFinished();
+    return suffixes[node];
+  }
+
+  /**
+   * The number of distinct words seen before the node's n-gram.
+   */
+  public int getContinuationCount(int node) {
+    checkFinished();
+    return continuationCounts[node];
+  }
+
+  /**
+   * The total continuation count of the node's children.
+   */
+  public double getContinuationHistoryCount(int node) {
+    checkFinished();
+    return continuationHistoryCounts[node];
+  }
+
+  /**
+   * The number of the node's children with a positive continuation count.
+   */
+  public int getNumContinuationChildren(int node) {
+    checkFinished();
+    return numContinuationChildren[node];
+  }
+
+  /**
+   * Returns a new array holding the children of a node.
+   */
+  public int[] getChildren(int node) {
+    checkFinished();
+    return Arrays.copyOfRange(children, childOffsets[node], childOffsets[node + 1]);
+  }
+
+  /**
+   * The number of distinct words seen as unigrams.
+   */
+  public int getVocabularySize() {
+    return numChildren[0];
+  }
+
+  /**
+   * Returns, for each order k and each count r from 1 to maxCount, the
+   * number of k-grams seen exactly r times (or, with continuation set,
+   * preceded by exactly r distinct words).
+   */
+  public double[][] getCountOfCounts(int maxCount, boolean continuation) {
+    if (continuation)
+      checkFinished();
+    double[][] countOfCounts = new double[order + 1][maxCount + 1];
+    for (int n = 1; n < size; n++) {
+      int count = (continuation ? continuationCounts[n] : counts[n]);
+      if (count >= 1 && count <= maxCount)
+        countOfCounts[depths[n]][count]++;
+    }
+    return countOfCounts;
+  }
+
+  /**
+   * Returns the words of a node's n-gram, separated by spaces.
+   */
+  public String toString(int node) {
+    StringBuilder sb = new StringBuilder();
+    for (int n = node; n > 0; n = parents[n]) {
+      sb.insert(0, words.get(wordIds[n]));
+      if (parents[n] > 0) sb.insert(0, ' ');
+    }
+    return sb.toString();
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[\n");
+    for (int n = 1; n < size; n++) {
+      sb.append("  ").append(toString(n)).append(" : ").append(counts[n]).append("\n");
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+  // -----------------------------------------------------------------------
+
+  public static void main(String[] args) {
+    CountTrie trie = new CountTrie(3);
+    trie.add(Arrays.asList("<S>", "<S>", "the", "cats", "growl", "</S>"), 2);
+    trie.add(Arrays.asList("<S>", "<S>", "the", "cats", "scamper", "</S>"), 2);
+    trie.finish();
+    System.out.println(trie);
+    int[] theCats = { trie.getWordId("the"), trie.getWordId("cats") };
+    int node = trie.getNode(theCats, 0, 2);
+    System.out.println("History count of the cats: " + trie.getHistoryCount(node));
+    System.out.println("Words after the cats: " + trie.getNumChildren(node));
+    System.out.println("Continuation count of cats: " +
+                       trie.getContinuationCount(trie.getSuffix(node)));
+    System.out.println("Nodes: " + trie.size());
+  }
+
+}
@@ -16,6 +16,7 @@ import java.util.Collection;
 public class Counter <E> implements Serializable {
   static final long serialVersionUID = 1L;
   Map<E, Double> entries;
+  double total;
 
   /**
    * The elements in the counter.
@@ -73,7 +74,8 @@ public class Counter <E> implements Serializable {
    * @param count
    */
   public void setCount(E key, double count) {
-    entries.put(key, count);
+    Double oldCount = entries.put(key, count);
+    total += (oldCount == null ? count : count - oldCount);
   }
 
   /**
@@ -103,16 +105,13 @@ public class Counter <E> implements Serializable {
   }
 
   /**
-   * Finds the total of all counts in the counter.  This implementation iterates
-   * through the entire counter every time this method is called.
+   * Finds the total of all counts in the counter.  The total is maintained
+   * as counts are set, so this is a constant time operation.  (Removing keys
+   * through keySet() bypasses the running total -- don't do it.)
    *
    * @return the counter's total
    */
   public double totalCount() {
-    double total = 0.0;
-    for (Map.Entry<E, Double> entry : entries.entrySet()) {
-      total += entry.getValue();
-    }
     return total;
   }
 
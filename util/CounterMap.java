@@ -17,6 +17,7 @@ public class CounterMap<K, V> {
 
   private MapFactory<V, Double> mf;
   private Map<K, Counter<V>> counterMap;
+  private double total;
 
   // -----------------------------------------------------------------------
 
@@ -49,11 +50,20 @@ public class CounterMap<K, V> {
     return counterMap.keySet();
   }
 
+  /**
+   * Returns whether the map has a sub-counter for the given key.  Unlike
+   * getCounter(), this never installs the key.
+   */
+  public boolean containsKey(K key) {
+    return counterMap.containsKey(key);
+  }
+
   /**
    * Sets the count for a particular (key, value) pair.
    */
   public void setCount(K key, V value, double count) {
     Counter<V> valueCounter = ensureCounter(key);
+    total += count - valueCounter.getCount(value);
     valueCounter.setCount(value, count);
   }
 
@@ -62,9 +72,22 @@ public class CounterMap<K, V> {
    */
   public void incrementCount(K key, V value, double count) {
     Counter<V> valueCounter = ensureCounter(key);
+    total += count;
     valueCounter.incrementCount(value, count);
   }
 
+  /**
+   * Increments every (key, value) pair by its count in another CounterMap.
+   */
+  public void incrementAll(CounterMap<K, V> other) {
+    for (Map.Entry<K, Counter<V>> entry : other.counterMap.entrySet()) {
+      Counter<V> valueCounter = ensureCounter(entry.getKey());
+      Counter<V> otherCounter = entry.getValue();
+      total += otherCounter.totalCount();
+      valueCounter.incrementAll(otherCounter);
+    }
+  }
+
   /**
    * Gets the count of the given (key, value) entry, or zero if that
    * entry is not present.  Does not create any objects.
@@ -89,15 +112,14 @@ public class CounterMap<K, V> {
   }
 
   /**
-   * Returns the total of all counts in sub-counters.  This
-   * implementation is linear; it recalculates the total each time.
+   * Returns the total of all counts in sub-counters.  The total is
+   * maintained as counts are set, so this is a constant time operation.
+   * Each sub-counter likewise keeps its own total, so
+   * getCounter(key).totalCount() is constant time too.  (Counts added
+   * directly to a sub-counter are not reflected here -- another reason
+   * not to do that.)
    */
   public double totalCount() {
-    double total = 0.0;
-    for (Map.Entry<K, Counter<V>> entry : counterMap.entrySet()) {
-      Counter<V> counter = entry.getValue();
-      total += counter.totalCount();
-    }
     return total;
   }
 
@@ -19,6 +19,15 @@ import java.util.*;
    * sequences of operations which transform the first sentence into the
    * second; the edit distance is defined to be the cost of the
    * <i>cheapest</i> such sequence.
+   *
+   * Words are first mapped to integer ids (equal words, by equals(), get
+   * equal ids), and the distance is computed over the ids without
+   * recursion, keeping only two rows of the dynamic programming table.
+   * With unit costs and a first sentence of at most 64 words, the table is
+   * instead computed a column at a time in the bits of a few longs
+   * (Myers' bit-parallel algorithm, as formulated by Hyyro).  The id map
+   * and the rows are kept per thread and reused, so a call allocates next
+   * to nothing, and an EditDistance may be shared between threads.
    */
   public class EditDistance {
 
@@ -26,83 +35,194 @@ import java.util.*;
     static double DELETE_COST = 1.0;
     static double SUBSTITUTE_COST = 1.0;
 
-    private double[][] initialize(double[][] d) {
-      for (int i = 0; i < d.length; i++) {
-        for (int j = 0; j < d[i].length; j++) {
-          d[i][j] = Double.NaN;
-        }
-      }
-      return d;
+    private static final int MAX_BIT_PARALLEL = 64;
+
+    /**
+     * The per-thread buffers.
+     */
+    private static class Scratch {
+      Map<String, Integer> ids = new HashMap<String, Integer>();
+      int[] first = new int[64];
+      int[] second = new int[64];
+      double[] previousRow = new double[65];
+      double[] row = new double[65];
+      long[] matches = new long[64];   // [id], for the bit-parallel path
     }
 
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+      protected Scratch initialValue() {
+        return new Scratch();
+      }
+    };
+
     /**
-     * Returns the edit distance between two sentences.  Operates by
-     * calling a recursive (dynamic programming) helper method.
+     * Returns the edit distance between two sentences.
      */
     public double getDistance(List<String> firstList, List<String> secondList) {
-      double[][] bestDistances =
-        initialize(new double[firstList.size() + 1][secondList.size() + 1]);
-      return getDistance(firstList, secondList, 0, 0, bestDistances);
+      return getDistance(firstList, secondList, Double.POSITIVE_INFINITY);
     }
 
     /**
-     * Computes the edit distance between a suffix of the first list and a
-     * suffix of the second listusing dynamic programming.  The best
-     * distances for small suffixes are computed first and memoized in the
-     * bestDistances table, which is passed around through recursive calls.
-     * Edit distances for longer suffixes are computed in terms of edit
-     * distances for shorter suffixes by examining alternative operations.
+     * Returns the edit distance between two sentences if it is at most
+     * maxDistance, and infinity otherwise.  Knowing the bound lets the
+     * search skip the cells of the table farther than maxDistance from
+     * its diagonal (Ukkonen's banding) and stop as soon as a whole row
+     * exceeds it.
      */
-    private double getDistance(List<String> firstList,
-                               List<String> secondList,
-                               int firstPosition,
-                               int secondPosition,
-                               double[][] bestDistances) {
-      
-      // if either suffix has "negative" length...
-      if (firstPosition > firstList.size() || secondPosition > secondList.size())
-        return Double.POSITIVE_INFINITY;
-
-      // if both suffixes are null, distance is 0 (base case for recursion)
-      if (firstPosition == firstList.size() && secondPosition == secondList.size())
-        return 0.0;
-
-      // if this distance has not yet been memoized in table...
-      if (Double.isNaN(bestDistances[firstPosition][secondPosition])) {
-
-        // start distance high and try alternative ways to reduce it...
-        double distance = Double.POSITIVE_INFINITY;
-
-        distance =                      // insert a word?
-          Math.min(distance, INSERT_COST +
-                   getDistance(firstList, secondList, 
-                               firstPosition + 1, secondPosition,
-                               bestDistances));
-        distance =                      // delete a word?
-          Math.min(distance, DELETE_COST +
-                   getDistance(firstList, secondList, 
-                               firstPosition, secondPosition + 1, 
-                               bestDistances));
-        distance =                      // substitute a word?
-          Math.min(distance, SUBSTITUTE_COST +
-                   getDistance(firstList, secondList,
-                               firstPosition + 1, secondPosition + 1,
-                               bestDistances));
-        
-        // if first words match, no cost incurred here
-        if (firstPosition < firstList.size() && secondPosition < secondList.size()) {
-          if (firstList.get(firstPosition).equals(secondList.get(secondPosition))) {
-            distance = 
-              Math.min(distance, 
-                       getDistance(firstList, secondList,
-                                   firstPosition + 1, secondPosition + 1,
-                                   bestDistances));
-          }
+    public double getDistance(List<String> firstList, List<String> secondList, double maxDistance) {
+      Scratch scratch = SCRATCH.get();
+      if (firstList.size() > scratch.first.length)
+        scratch.first = new int[2 * firstList.size()];
+      if (secondList.size() > scratch.second.length)
+        scratch.second = new int[2 * secondList.size()];
+      // ids are those of the first sentence; words only in the second
+      // sentence get -1, which matches nothing
+      Map<String, Integer> ids = scratch.ids;
+      ids.clear();
+      for (int i = 0; i < firstList.size(); i++) {
+        Integer id = ids.get(firstList.get(i));
+        if (id == null) {
+          id = ids.size();
+          ids.put(firstList.get(i), id);
         }
+        scratch.first[i] = id;
+      }
+      for (int j = 0; j < secondList.size(); j++) {
+        Integer id = ids.get(secondList.get(j));
+        scratch.second[j] = (id == null ? -1 : id);
+      }
+      return getDistance(scratch, scratch.first, firstList.size(), scratch.second, secondList.size(),
+                         ids.size(), maxDistance);
+    }
+
+    /**
+     * Returns the edit distance between two sentences given as arrays of
+     * word ids, which must be non-negative except that -1 matches
+     * nothing.
+     */
+    public double getDistance(int[] first, int[] second) {
+      return getDistance(first, second, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the edit distance between two sentences given as arrays of
+     * word ids if it is at most maxDistance, and infinity otherwise.
+     */
+    public double getDistance(int[] first, int[] second, double maxDistance) {
+      int numIds = 0;
+      for (int id : first) {
+        if (id >= 0)
+          numIds = Math.max(numIds, id + 1);
+      }
+      return getDistance(SCRATCH.get(), first, first.length, second, second.length, numIds, maxDistance);
+    }
+
+    private static boolean hasUnitCosts() {
+      return INSERT_COST == 1.0 && DELETE_COST == 1.0 && SUBSTITUTE_COST == 1.0;
+    }
+
+    private double getDistance(Scratch scratch, int[] first, int n, int[] second, int m,
+                               int numIds, double maxDistance) {
+      double distance;
+      if (n <= MAX_BIT_PARALLEL && hasUnitCosts())
+        distance = getBitParallelDistance(scratch, first, n, second, m, numIds);
+      else
+        distance = getBandedDistance(scratch, first, n, second, m, maxDistance);
+      return (distance <= maxDistance ? distance : Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Computes the table a column (a word of the second sentence) at a
+     * time, with each column held as the bit vectors of its positive and
+     * negative vertical differences; the distance is tracked in the last
+     * row.  The first sentence has n <= 64 words.
+     */
+    private double getBitParallelDistance(Scratch scratch, int[] first, int n,
+                                          int[] second, int m, int numIds) {
+      if (n == 0)
+        return m;
+      if (numIds > scratch.matches.length)
+        scratch.matches = new long[Math.max(numIds, 2 * scratch.matches.length)];
+      long[] matches = scratch.matches;   // all zero between calls
+      for (int i = 0; i < n; i++) {
+        if (first[i] >= 0)
+          matches[first[i]] |= 1L << i;
+      }
+      long last = 1L << (n - 1);
+      long positive = -1L;   // vertical differences of +1
+      long negative = 0L;    // vertical differences of -1
+      int distance = n;
+      for (int j = 0; j < m; j++) {
+        long match = (second[j] >= 0 && second[j] < numIds ? matches[second[j]] : 0L);
+        long xv = match | negative;
+        long xh = (((match & positive) + positive) ^ positive) | match;
+        long horizontalPositive = negative | ~(xh | positive);
+        long horizontalNegative = positive & xh;
+        if ((horizontalPositive & last) != 0)
+          distance++;
+        else if ((horizontalNegative & last) != 0)
+          distance--;
+        // the top row grows by one per word, so a +1 is shifted in
+        horizontalPositive = (horizontalPositive << 1) | 1L;
+        horizontalNegative <<= 1;
+        positive = horizontalNegative | ~(xv | horizontalPositive);
+        negative = horizontalPositive & xv;
+      }
+      // clear only the entries set, as ids may range over a large vocabulary
+      for (int i = 0; i < n; i++) {
+        if (first[i] >= 0)
+          matches[first[i]] = 0L;
+      }
+      return distance;
+    }
 
-        // memoize for future reference
-        bestDistances[firstPosition][secondPosition] = distance;
+    /**
+     * Computes the table a row (a word of the first sentence) at a time,
+     * keeping two rows.  With a finite maxDistance (and insertions and
+     * deletions costing at least 1 each) only the cells within
+     * maxDistance of the diagonal are computed, the others being known
+     * to exceed it, and the search stops once a row has no cell within
+     * the bound.
+     */
+    private double getBandedDistance(Scratch scratch, int[] first, int n,
+                                     int[] second, int m, double maxDistance) {
+      int band = m + n;
+      if (maxDistance < Double.POSITIVE_INFINITY && INSERT_COST >= 1.0 && DELETE_COST >= 1.0) {
+        if (Math.abs(n - m) > maxDistance)
+          return Double.POSITIVE_INFINITY;
+        band = (int) Math.min(band, Math.floor(maxDistance));
+      }
+      if (m + 1 > scratch.row.length) {
+        scratch.previousRow = new double[2 * (m + 1)];
+        scratch.row = new double[2 * (m + 1)];
+      }
+      double[] previousRow = scratch.previousRow;
+      double[] row = scratch.row;
+      for (int j = 0; j <= m; j++) {
+        row[j] = (j <= band ? j * DELETE_COST : Double.POSITIVE_INFINITY);
+      }
+      for (int i = 1; i <= n; i++) {
+        double[] swap = previousRow;
+        previousRow = row;
+        row = swap;
+        int from = Math.max(1, i - band);
+        int to = Math.min(m, i + band);
+        row[from - 1] = (from == 1 ? i * INSERT_COST : Double.POSITIVE_INFINITY);
+        double rowMin = row[from - 1];
+        for (int j = from; j <= to; j++) {
+          double distance = Math.min(previousRow[j] + INSERT_COST, row[j - 1] + DELETE_COST);
+          distance = Math.min(distance, previousRow[j - 1] +
+                              (first[i - 1] == second[j - 1] && first[i - 1] >= 0 ? 0.0 : SUBSTITUTE_COST));
+          row[j] = distance;
+          rowMin = Math.min(rowMin, distance);
+        }
+        if (to < m)
+          row[to + 1] = Double.POSITIVE_INFINITY;
+        if (rowMin > maxDistance)
+          return Double.POSITIVE_INFINITY;
       }
-      return bestDistances[firstPosition][secondPosition];
+      scratch.previousRow = previousRow;
+      scratch.row = row;
+      return row[m];
     }
   }
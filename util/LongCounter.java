@@ -0,0 +1,207 @@
+package cs224n.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive longs to doubles.  Behaves like a Counter (keys not
+ * in the counter return a count of zero), but is backed by an
+ * open-addressing hash table with linear probing over parallel primitive
+ * arrays, so no Long or Double objects are ever created.  This makes it
+ * suitable for very large n-gram tables where each n-gram has been packed
+ * into a single long.  Entries cannot be removed.
+ *
+ * The value Long.MIN_VALUE is reserved to mark empty slots and cannot be
+ * used as a key.
+ */
+public class LongCounter {
+
+  private static final long EMPTY = Long.MIN_VALUE;
+  private static final double MAX_LOAD = 0.7;
+
+  private long[] keys;
+  private double[] values;
+  private int size;
+  private int threshold;
+  private double total;
+
+  /**
+   * Returns the slot holding the given key, or the empty slot where it
+   * would be inserted.
+   */
+  private int findSlot(long key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  static int hash(long key) {
+    // MurmurHash3 finalizer; packed n-grams differ mostly in the low bits
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    double[] oldValues = values;
+    keys = new long[capacity];
+    values = new double[capacity];
+    Arrays.fill(keys, EMPTY);
+    threshold = (int) (capacity * MAX_LOAD);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = findSlot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * The number of entries in the counter (not the total count -- use
+   * totalCount() instead).
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * True if there are no entries in the counter.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns whether the counter contains the given key.
+   */
+  public boolean containsKey(long key) {
+    return keys[findSlot(key)] == key;
+  }
+
+  /**
+   * Get the count of the key, or zero if the key is not in the counter.
+   */
+  public double getCount(long key) {
+    int slot = findSlot(key);
+    if (keys[slot] != key)
+      return 0.0;
+    return values[slot];
+  }
+
+  /**
+   * Set the count for the given key, clobbering any previous count.
+   */
+  public void setCount(long key, double count) {
+    if (key == EMPTY)
+      throw new IllegalArgumentException("Reserved key: " + key);
+    int slot = findSlot(key);
+    if (keys[slot] == key) {
+      total += count - values[slot];
+      values[slot] = count;
+      return;
+    }
+    if (size >= threshold) {
+      rehash(keys.length * 2);
+      slot = findSlot(key);
+    }
+    keys[slot] = key;
+    values[slot] = count;
+    size++;
+    total += count;
+  }
+
+  /**
+   * Increment a key's count by the given amount.
+   */
+  public void incrementCount(long key, double increment) {
+    setCount(key, getCount(key) + increment);
+  }
+
+  /**
+   * Increment every key of the given counter by its count in that counter.
+   */
+  public void incrementAll(LongCounter counter) {
+    for (int i = 0; i < counter.keys.length; i++) {
+      if (counter.keys[i] != EMPTY)
+        incrementCount(counter.keys[i], counter.values[i]);
+    }
+  }
+
+  /**
+   * Returns the total of all counts in the counter.  The total is
+   * maintained as counts are set, so this is a constant time operation.
+   */
+  public double totalCount() {
+    return total;
+  }
+
+  /**
+   * Returns a new array holding every key in the counter, in no
+   * particular order.
+   */
+  public long[] keys() {
+    long[] result = new long[size];
+    int n = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY)
+        result[n++] = keys[i];
+    }
+    return result;
+  }
+
+  /**
+   * Returns a new array holding every key in the counter in ascending
+   * order.
+   */
+  public long[] sortedKeys() {
+    long[] result = keys();
+    Arrays.sort(result);
+    return result;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (long key : sortedKeys()) {
+      if (sb.length() > 1) sb.append(", ");
+      sb.append(key).append(" : ").append(getCount(key));
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+  public LongCounter() {
+    this(16);
+  }
+
+  public LongCounter(int expectedSize) {
+    int capacity = 16;
+    while (capacity * MAX_LOAD <= expectedSize) {
+      capacity *= 2;
+    }
+    keys = new long[0];
+    rehash(capacity);
+  }
+
+  public static void main(String[] args) {
+    LongCounter counter = new LongCounter();
+    System.out.println(counter);
+    counter.incrementCount(7L, 7);
+    counter.incrementCount(7L, 1);
+    counter.setCount(0L, 1);
+    for (long i = 100; i < 200; i++) {
+      counter.incrementCount(i << 32, 1);
+    }
+    System.out.println("Count of 7: " + counter.getCount(7L));
+    System.out.println("Count of 8: " + counter.getCount(8L));
+    System.out.println("Size: " + counter.size());
+    System.out.println("Total: " + counter.totalCount());
+  }
+
+}
@@ -0,0 +1,98 @@
+package cs224n.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only array of primitive values of one size (1, 2, 4 or 8 bytes)
+ * kept in a region of a memory-mapped file rather than on the heap, so
+ * that it costs the garbage collector nothing and every process mapping
+ * the same file shares one copy in the page cache.  A single
+ * MappedByteBuffer cannot exceed 2 GB, so the region is mapped in
+ * segments of 1 GB, each holding a whole number of values; an array may
+ * hold up to 2^31 - 1 values of any size.
+ *
+ * Values are big-endian, as written by DataOutputStream.  The mapping
+ * stays valid after the file is closed.
+ */
+public class MappedArray {
+
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  private MappedByteBuffer[] segments;
+  private int length;
+  private int shift;   // log2 of the value size
+
+  /**
+   * Maps length values of the given size (in bytes) starting at the given
+   * offset of the file.
+   */
+  public MappedArray(String filename, long offset, int length, int valueSize) throws IOException {
+    this.length = length;
+    shift = Integer.numberOfTrailingZeros(valueSize);
+    if (valueSize != 1 << shift || shift > 3)
+      throw new IllegalArgumentException("Cannot map values of " + valueSize + " bytes");
+    long bytes = (long) length << shift;
+    segments = new MappedByteBuffer[(int) ((bytes + SEGMENT_MASK) >>> SEGMENT_BITS)];
+    RandomAccessFile file = new RandomAccessFile(filename, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      for (int s = 0; s < segments.length; s++) {
+        long start = (long) s << SEGMENT_BITS;
+        segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start,
+                                  Math.min(bytes - start, 1L << SEGMENT_BITS));
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  public int length() {
+    return length;
+  }
+
+  /**
+   * The number of bytes mapped.
+   */
+  public long byteSize() {
+    return (long) length << shift;
+  }
+
+  public byte getByte(int index) {
+    return segments[index >>> SEGMENT_BITS].get(index & (int) SEGMENT_MASK);
+  }
+
+  public char getChar(int index) {
+    long position = (long) index << 1;
+    return segments[(int) (position >>> SEGMENT_BITS)].getChar((int) (position & SEGMENT_MASK));
+  }
+
+  public int getInt(int index) {
+    long position = (long) index << 2;
+    return segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+  }
+
+  public float getFloat(int index) {
+    long position = (long) index << 2;
+    return segments[(int) (position >>> SEGMENT_BITS)].getFloat((int) (position & SEGMENT_MASK));
+  }
+
+  public long getLong(int index) {
+    long position = (long) index << 3;
+    return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+  }
+
+  /**
+   * Asks the operating system to read the whole array into memory now,
+   * rather than a page at a time on first use.
+   */
+  public void load() {
+    for (MappedByteBuffer segment : segments) {
+      segment.load();
+    }
+  }
+
+}
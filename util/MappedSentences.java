@@ -0,0 +1,353 @@
+package cs224n.util;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A <code>MappedSentences</code> object is a <code>Collection</code> of
+ * sentences backed by a memory-mapped text file containing one sentence
+ * per line.  Sentences are split and lowercased exactly as by
+ * <code>Sentences</code>, but without regular expressions or per-line
+ * Strings: a single pass on construction records where every line starts
+ * and assigns every distinct word an integer id, after which sentences
+ * are tokenized straight from the mapped bytes.  All sentences share one
+ * String instance per word.
+ *
+ * Besides the usual view of sentences as lists of words, sentences can be
+ * read as arrays of word ids (see getWord()).  size() is constant time,
+ * and since the collection is never modified after construction it may be
+ * iterated by several threads at once.
+ */
+public class MappedSentences extends AbstractCollection<List<String>> {
+
+  private static final int MAX_SEGMENT = Integer.MAX_VALUE;
+  private static final Charset CHARSET = Charset.defaultCharset();
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private String filename;
+  private MappedByteBuffer[] segments;
+  private long[] lineStarts;      // (segment << 32) | offset of each line
+  private int[] lineLengths;
+  private int numLines;
+
+  private List<String> words;     // the word for each id
+  private List<byte[]> wordBytes; // the lowercased bytes for each id
+  private int[] table;            // open-addressing table of id + 1, 0 if empty
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns true for the bytes matched by the regular expression \s
+   * (other than line terminators, which never occur within a line).
+   */
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+  }
+
+  private static int hash(byte[] bytes, int length) {
+    int h = 0;
+    for (int i = 0; i < length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Copies one token into the scratch buffer, lowercased, and returns its
+   * length in the scratch buffer.  Tokens with non-ASCII bytes are decoded
+   * (in the platform charset, as FileReader would) and lowercased as
+   * Strings, to match String.toLowerCase(), and then stored as UTF-8 so
+   * that the bytes always decode back to the same word.
+   */
+  private static int lowercase(MappedByteBuffer segment, int start, int end, byte[][] scratch) {
+    int length = end - start;
+    if (scratch[0].length < length)
+      scratch[0] = new byte[Math.max(length, 2 * scratch[0].length)];
+    byte[] buffer = scratch[0];
+    boolean ascii = true;
+    for (int i = 0; i < length; i++) {
+      byte b = segment.get(start + i);
+      if (b < 0) ascii = false;
+      if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+      buffer[i] = b;
+    }
+    if (ascii)
+      return length;
+    byte[] raw = new byte[length];
+    for (int i = 0; i < length; i++) {
+      raw[i] = segment.get(start + i);
+    }
+    byte[] lowered = new String(raw, CHARSET).toLowerCase().getBytes(UTF8);
+    scratch[0] = (lowered.length > buffer.length ? lowered : buffer);
+    System.arraycopy(lowered, 0, scratch[0], 0, lowered.length);
+    return lowered.length;
+  }
+
+  /**
+   * Returns the id of the given lowercased token.  If it is not in the
+   * vocabulary, returns -(slot + 2) for the free slot where it belongs.
+   */
+  private int lookup(byte[] token, int length) {
+    int mask = table.length - 1;
+    int slot = hash(token, length) & mask;
+    while (table[slot] != 0) {
+      byte[] candidate = wordBytes.get(table[slot] - 1);
+      if (candidate.length == length && equal(candidate, token, length))
+        return table[slot] - 1;
+      slot = (slot + 1) & mask;
+    }
+    return -(slot + 2);
+  }
+
+  private static boolean equal(byte[] word, byte[] token, int length) {
+    for (int i = 0; i < length; i++) {
+      if (word[i] != token[i]) return false;
+    }
+    return true;
+  }
+
+  private int intern(byte[] token, int length) {
+    int id = lookup(token, length);
+    if (id >= 0)
+      return id;
+    if (2 * (words.size() + 1) > table.length) {
+      rehash(2 * table.length);
+      id = lookup(token, length);
+    }
+    int slot = -(id + 2);
+    byte[] bytes = Arrays.copyOf(token, length);
+    wordBytes.add(bytes);
+    words.add(new String(bytes, UTF8));
+    table[slot] = words.size();
+    return words.size() - 1;
+  }
+
+  private void rehash(int capacity) {
+    table = new int[capacity];
+    for (int id = 0; id < wordBytes.size(); id++) {
+      byte[] bytes = wordBytes.get(id);
+      int slot = hash(bytes, bytes.length) & (capacity - 1);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      table[slot] = id + 1;
+    }
+  }
+
+  /**
+   * Splits one line into word ids, as line.split("\\s+") would: leading
+   * whitespace (or an empty line) yields an empty first word, trailing
+   * whitespace yields nothing.  Ids are written to ids[0] (which is grown
+   * as needed) and the number of words is returned.
+   */
+  private int tokenize(int line, int[][] ids, byte[][] scratch, boolean intern) {
+    MappedByteBuffer segment = segments[(int) (lineStarts[line] >>> 32)];
+    int start = (int) lineStarts[line];
+    int end = start + lineLengths[line];
+    int count = 0;
+    int pos = start;
+    while (true) {
+      int tokenStart = pos;
+      while (pos < end && !isSpace(segment.get(pos))) pos++;
+      if (pos > tokenStart || count == 0) {
+        int length = lowercase(segment, tokenStart, pos, scratch);
+        int id = (intern ? intern(scratch[0], length) : lookup(scratch[0], length));
+        if (count == ids[0].length)
+          ids[0] = Arrays.copyOf(ids[0], 2 * count);
+        ids[0][count++] = id;
+      }
+      while (pos < end && isSpace(segment.get(pos))) pos++;
+      if (pos >= end) break;
+    }
+    return count;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Maps the file in segments of at most 2GB, each ending on a line
+   * boundary, and records the start and length of every line.
+   */
+  private void mapLines(FileChannel channel) throws IOException {
+    List<MappedByteBuffer> segmentList = new ArrayList<MappedByteBuffer>();
+    lineStarts = new long[1024];
+    lineLengths = new int[1024];
+    long fileSize = channel.size();
+    long position = 0;
+    while (position < fileSize) {
+      long length = Math.min(MAX_SEGMENT, fileSize - position);
+      MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      int limit = (int) length;
+      if (position + length < fileSize) {
+        while (limit > 0 && segment.get(limit - 1) != '\n') limit--;
+        if (limit == 0)
+          throw new IOException("Line longer than " + MAX_SEGMENT + " bytes in " + filename);
+      }
+      long segmentIndex = segmentList.size();
+      segmentList.add(segment);
+      int lineStart = 0;
+      for (int i = 0; i < limit; i++) {
+        byte b = segment.get(i);
+        if (b == '\n' || b == '\r') {
+          addLine(segmentIndex, lineStart, i - lineStart);
+          if (b == '\r' && i + 1 < limit && segment.get(i + 1) == '\n') i++;
+          lineStart = i + 1;
+        }
+      }
+      if (lineStart < limit)
+        addLine(segmentIndex, lineStart, limit - lineStart);
+      position += limit;
+    }
+    segments = segmentList.toArray(new MappedByteBuffer[segmentList.size()]);
+  }
+
+  private void addLine(long segmentIndex, int start, int length) {
+    if (numLines == lineStarts.length) {
+      lineStarts = Arrays.copyOf(lineStarts, 2 * numLines);
+      lineLengths = Arrays.copyOf(lineLengths, 2 * numLines);
+    }
+    lineStarts[numLines] = (segmentIndex << 32) | start;
+    lineLengths[numLines] = length;
+    numLines++;
+  }
+
+  // -----------------------------------------------------------------------
+
+  /**
+   * Returns the numbers of sentences in this collection, in constant time.
+   */
+  public int size() {
+    return numLines;
+  }
+
+  /**
+   * Returns the number of distinct words in the file.
+   */
+  public int getNumWords() {
+    return words.size();
+  }
+
+  /**
+   * Returns the word with the given id.
+   */
+  public String getWord(int id) {
+    return words.get(id);
+  }
+
+  /**
+   * Returns the words of the given sentence.
+   */
+  public List<String> getSentence(int index) {
+    return toWords(getSentenceIds(index));
+  }
+
+  /**
+   * Returns the word ids of the given sentence.
+   */
+  public int[] getSentenceIds(int index) {
+    int[][] ids = new int[][] { new int[32] };
+    int length = tokenize(index, ids, new byte[][] { new byte[64] }, false);
+    return Arrays.copyOf(ids[0], length);
+  }
+
+  private List<String> toWords(int[] ids) {
+    String[] sentence = new String[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      sentence[i] = words.get(ids[i]);
+    }
+    return Arrays.asList(sentence);
+  }
+
+  /**
+   * An iterator over the sentences as arrays of word ids.  Each iterator
+   * keeps its own scratch buffers, so separate iterators may be used by
+   * separate threads.
+   */
+  class IdIterator implements Iterator<int[]> {
+
+    int next;
+    int end;
+    int[][] ids = new int[][] { new int[32] };
+    byte[][] scratch = new byte[][] { new byte[64] };
+
+    public boolean hasNext() {
+      return next < end;
+    }
+
+    public int[] next() {
+      if (next >= end)
+        throw new NoSuchElementException();
+      int length = tokenize(next++, ids, scratch, false);
+      return Arrays.copyOf(ids[0], length);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    IdIterator(int start, int end) {
+      this.next = start;
+      this.end = end;
+    }
+
+  } // end IdIterator
+
+  /**
+   * Returns an iterator over the sentences as arrays of word ids.
+   */
+  public Iterator<int[]> idIterator() {
+    return new IdIterator(0, numLines);
+  }
+
+  /**
+   * Returns an iterator over the sentences as lists of words.
+   */
+  public Iterator<List<String>> iterator() {
+    final IdIterator ids = new IdIterator(0, numLines);
+    return new Iterator<List<String>>() {
+      public boolean hasNext() {
+        return ids.hasNext();
+      }
+      public List<String> next() {
+        return toWords(ids.next());
+      }
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Maps the named file and builds its line index and vocabulary.
+   */
+  public MappedSentences(String filename) throws IOException {
+    this.filename = filename;
+    RandomAccessFile file = new RandomAccessFile(filename, "r");
+    try {
+      mapLines(file.getChannel());
+    } finally {
+      file.close();
+    }
+    words = new ArrayList<String>();
+    wordBytes = new ArrayList<byte[]>();
+    table = new int[1024];
+    int[][] ids = new int[][] { new int[32] };
+    byte[][] scratch = new byte[][] { new byte[64] };
+    for (int line = 0; line < numLines; line++) {
+      tokenize(line, ids, scratch, true);
+    }
+  }
+
+  /** Takes the name of a file containing sentences and returns a new
+   *  memory-mapped sentence collection backed by that file.
+   */
+  public static class Reader {
+    public static MappedSentences readSentences(String filename) throws IOException {
+      return new MappedSentences(filename);
+    }
+  }
+
+}
@@ -0,0 +1,285 @@
+package cs224n.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utilities for spreading work over a shared pool of daemon threads.  The
+ * number of threads defaults to the number of available processors and
+ * can be changed with setNumThreads(); with a single thread all work runs
+ * in the calling thread.  Calls made from a pool thread also run in the
+ * calling thread, so that parallel work nested in parallel work cannot
+ * starve the pool.
+ */
+public class Parallel {
+
+  /**
+   * Builds a result from a stream of items.  Each chunk of items is
+   * accumulated into its own fresh result, possibly in another thread, and
+   * the chunk results are then merged in the order the chunks were read.
+   */
+  public static interface Accumulator<T, R> {
+    R newResult();
+    void accumulate(R result, T item);
+    void merge(R result, R chunkResult);
+  }
+
+  /**
+   * A task run once for each index of a range.
+   */
+  public static interface IndexTask {
+    void run(int index);
+  }
+
+  /**
+   * A function computed once for each index of a range.
+   */
+  public static interface IndexFunction<R> {
+    R apply(int index);
+  }
+
+  static final int CHUNK_SIZE = 4096;
+
+  private static int numThreads = Runtime.getRuntime().availableProcessors();
+  private static ExecutorService executor;
+
+  public static synchronized int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * Sets the number of threads used by later calls.  A value of one runs
+   * everything serially in the calling thread.
+   */
+  public static synchronized void setNumThreads(int threads) {
+    if (threads < 1)
+      throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+    if (threads != numThreads && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    numThreads = threads;
+  }
+
+  /**
+   * Returns the shared thread pool, creating it if necessary.
+   */
+  public static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Worker(r);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  private static class Worker extends Thread {
+    Worker(Runnable r) {
+      super(r, "cs224n-worker");
+    }
+  }
+
+  /**
+   * Returns whether work should run serially in the calling thread: with
+   * a single thread, or when called from a pool thread.
+   */
+  private static boolean isSerial() {
+    return getNumThreads() == 1 || Thread.currentThread() instanceof Worker;
+  }
+
+  /**
+   * Waits for a task, rethrowing any failure unchecked.
+   */
+  public static <R> R get(Future<R> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Accumulates every item into a single result.  Items are read in the
+   * calling thread (so disk-backed collections are only iterated once),
+   * handed out to the pool in chunks, and the chunk results merged in
+   * order, so the outcome does not depend on thread scheduling.  At most
+   * a few chunks per thread are in flight at once.
+   */
+  public static <T, R> R accumulate(Iterable<T> items, final Accumulator<T, R> accumulator) {
+    if (isSerial()) {
+      R result = accumulator.newResult();
+      for (T item : items) {
+        accumulator.accumulate(result, item);
+      }
+      return result;
+    }
+    ExecutorService pool = getExecutor();
+    int maxPending = 2 * getNumThreads();
+    LinkedList<Future<R>> pending = new LinkedList<Future<R>>();
+    R result = null;
+    List<T> chunk = new ArrayList<T>(CHUNK_SIZE);
+    for (T item : items) {
+      chunk.add(item);
+      if (chunk.size() == CHUNK_SIZE) {
+        pending.add(pool.submit(accumulateTask(chunk, accumulator)));
+        chunk = new ArrayList<T>(CHUNK_SIZE);
+        if (pending.size() >= maxPending)
+          result = merge(result, get(pending.removeFirst()), accumulator);
+      }
+    }
+    if (!chunk.isEmpty())
+      pending.add(pool.submit(accumulateTask(chunk, accumulator)));
+    while (!pending.isEmpty()) {
+      result = merge(result, get(pending.removeFirst()), accumulator);
+    }
+    return (result == null ? accumulator.newResult() : result);
+  }
+
+  /**
+   * Runs the task for every index in [0, n) and waits for all of them.
+   * The range is split into one contiguous block per thread; the task
+   * must be safe to run for different indices at once.
+   */
+  public static void forEach(int n, final IndexTask task) {
+    int threads = (isSerial() ? 1 : Math.min(getNumThreads(), n));
+    if (threads <= 1) {
+      for (int i = 0; i < n; i++) {
+        task.run(i);
+      }
+      return;
+    }
+    ExecutorService pool = getExecutor();
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(threads);
+    for (int t = 0; t < threads; t++) {
+      final int start = (int) ((long) n * t / threads);
+      final int end = (int) ((long) n * (t + 1) / threads);
+      futures.add(pool.submit(new Callable<Object>() {
+        public Object call() {
+          for (int i = start; i < end; i++) {
+            task.run(i);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> future : futures) {
+      get(future);
+    }
+  }
+
+  /**
+   * Runs the task for every index in [0, n) and waits for all of them,
+   * like forEach(), but with each thread claiming the next unclaimed index
+   * whenever it finishes one, so that tasks of uneven cost keep every
+   * thread busy to the end.  Suits a few hundred or thousand costly tasks
+   * rather than millions of cheap ones.
+   */
+  public static void forEachDynamic(final int n, final IndexTask task) {
+    int threads = (isSerial() ? 1 : Math.min(getNumThreads(), n));
+    if (threads <= 1) {
+      for (int i = 0; i < n; i++) {
+        task.run(i);
+      }
+      return;
+    }
+    ExecutorService pool = getExecutor();
+    final AtomicInteger next = new AtomicInteger();
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(threads);
+    for (int t = 0; t < threads; t++) {
+      futures.add(pool.submit(new Callable<Object>() {
+        public Object call() {
+          for (int i = next.getAndIncrement(); i < n; i = next.getAndIncrement()) {
+            task.run(i);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> future : futures) {
+      get(future);
+    }
+  }
+
+  /**
+   * Returns an iterator over the function's values for the indices in
+   * [0, n), in order.  The values are computed in the pool a few per
+   * thread ahead of the iterator, so that a consumer of items that are
+   * slow to produce (files read from disk, say) overlaps producing them
+   * with its own work without ever holding more than a few.
+   */
+  public static <R> Iterator<R> mapAhead(final int n, final IndexFunction<R> function) {
+    final boolean serial = isSerial();
+    final int maxPending = 2 * getNumThreads();
+    return new Iterator<R>() {
+      int next;        // the next index returned
+      int submitted;   // the next index submitted to the pool
+      LinkedList<Future<R>> pending = new LinkedList<Future<R>>();
+
+      public boolean hasNext() {
+        return next < n;
+      }
+
+      public R next() {
+        if (next >= n)
+          throw new NoSuchElementException();
+        if (serial)
+          return function.apply(next++);
+        ExecutorService pool = getExecutor();
+        while (submitted < n && submitted < next + maxPending) {
+          final int index = submitted++;
+          pending.add(pool.submit(new Callable<R>() {
+            public R call() {
+              return function.apply(index);
+            }
+          }));
+        }
+        next++;
+        return get(pending.removeFirst());
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private static <T, R> Callable<R> accumulateTask(final List<T> chunk,
+                                                   final Accumulator<T, R> accumulator) {
+    return new Callable<R>() {
+      public R call() {
+        R result = accumulator.newResult();
+        for (T item : chunk) {
+          accumulator.accumulate(result, item);
+        }
+        return result;
+      }
+    };
+  }
+
+  private static <T, R> R merge(R result, R chunkResult, Accumulator<T, R> accumulator) {
+    if (result == null)
+      return chunkResult;
+    accumulator.merge(result, chunkResult);
+    return result;
+  }
+
+}
@@ -0,0 +1,69 @@
+package cs224n.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples keys of a Counter in proportion to their counts.  The counts are
+ * laid out once as a cumulative array, after which each sample is a binary
+ * search: O(log n) instead of a walk over the whole counter.  A sampler is
+ * a snapshot, so later changes to the counter are not reflected, and it is
+ * never modified after construction, so it may be shared between threads.
+ */
+public class Sampler<E> {
+
+  private final List<E> keys;
+  private final double[] cumulative;
+  private final double norm;
+
+  /**
+   * Builds a sampler over the given counter, normalized by its total count.
+   */
+  public Sampler(Counter<E> counter) {
+    this(counter, counter.totalCount());
+  }
+
+  /**
+   * Builds a sampler over the given counter, normalized by the given total.
+   * If the total exceeds the sum of the counts, the remaining mass is
+   * reserved: samples that fall into it return null.
+   */
+  public Sampler(Counter<E> counter, double norm) {
+    keys = new ArrayList<E>(counter.keySet());
+    cumulative = new double[keys.size()];
+    double sum = 0.0;
+    for (int i = 0; i < cumulative.length; i++) {
+      sum += counter.getCount(keys.get(i));
+      cumulative[i] = sum;
+    }
+    this.norm = norm;
+  }
+
+  /**
+   * Returns the key for a sample uniform on [0, 1): the first key whose
+   * cumulative count exceeds sample * total, or null if there is none.
+   */
+  public E sample(double sample) {
+    double target = sample * norm;
+    int lo = 0;
+    int hi = cumulative.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (cumulative[mid] > target) hi = mid;
+      else lo = mid + 1;
+    }
+    return (lo < cumulative.length ? keys.get(lo) : null);
+  }
+
+  /**
+   * Returns a random key, drawn with Math.random().
+   */
+  public E sample() {
+    return sample(Math.random());
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+}